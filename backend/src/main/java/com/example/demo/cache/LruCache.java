@@ -0,0 +1,183 @@
+package com.example.demo.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe LRU cache bounded by total weight, with an optional time-to-live.
+ *
+ * Each value is weighed once on insert; least recently used entries are evicted until the
+ * total fits. Hit, miss and eviction counts are kept for metrics. Uses a ReentrantLock
+ * rather than synchronized so virtual threads never pin their carrier while waiting.
+ */
+public class LruCache<K, V> {
+
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final ToLongFunction<V> weigher;
+    // System.nanoTime outside tests
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private record Entry<V>(V value, long weight, long expiresAt) {
+    }
+
+    /**
+     * @param maxWeight upper bound on the summed weight of all entries
+     * @param ttl       how long an entry stays valid after insert, or null for no expiry
+     * @param weigher   weight of a value (e.g. number of items it holds), at least 1 is charged
+     */
+    public LruCache(long maxWeight, Duration ttl, ToLongFunction<V> weigher) {
+        this(maxWeight, ttl, weigher, System::nanoTime);
+    }
+
+    LruCache(long maxWeight, Duration ttl, ToLongFunction<V> weigher, LongSupplier nanoClock) {
+        this.maxWeight = maxWeight;
+        this.ttlNanos = ttl != null ? ttl.toNanos() : 0;
+        this.weigher = weigher;
+        this.nanoClock = nanoClock;
+    }
+
+    public V get(K key) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && isExpired(entry)) {
+                removeEntry(key, entry);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        long weight = Math.max(1, weigher.applyAsLong(value));
+        if (weight > maxWeight) {
+            return;
+        }
+        long expiresAt = ttlNanos > 0 ? nanoClock.getAsLong() + ttlNanos : 0;
+        lock.lock();
+        try {
+            Entry<V> previous = entries.put(key, new Entry<>(value, weight, expiresAt));
+            if (previous != null) {
+                totalWeight -= previous.weight();
+            }
+            totalWeight += weight;
+            evictToFit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                removeEntry(key, entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            totalWeight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    public double hitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /** Publishes the cache statistics using Micrometer's standard cache meter names. */
+    public void bindTo(MeterRegistry registry, String name) {
+        FunctionCounter.builder("cache.gets", this, LruCache::hitCount)
+                .tag("cache", name).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", this, LruCache::missCount)
+                .tag("cache", name).tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", this, LruCache::evictionCount)
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("cache.size", this, LruCache::size)
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("cache.hit.rate", this, LruCache::hitRate)
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    // Caller must hold the lock
+    private void evictToFit() {
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while (totalWeight > maxWeight && it.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            it.remove();
+            totalWeight -= eldest.getValue().weight();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void removeEntry(K key, Entry<V> entry) {
+        entries.remove(key);
+        totalWeight -= entry.weight();
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return entry.expiresAt() != 0 && nanoClock.getAsLong() - entry.expiresAt() > 0;
+    }
+}
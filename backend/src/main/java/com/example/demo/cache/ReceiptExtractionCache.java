@@ -0,0 +1,210 @@
+package com.example.demo.cache;
+
+import com.example.demo.config.StartupTasks;
+import com.example.demo.image.PerceptualHash;
+import com.example.demo.model.ReceiptExtraction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ingredients already extracted from a receipt image, so a re-upload of the same receipt
+ * skips the Gemini round trip.
+ *
+ * Results are keyed by the SHA-256 of the uploaded bytes (see {@link #contentHash}),
+ * which callers may prefix with whatever else the result depends on, and kept in two tiers: an LRU in
+ * memory and the receipt_extractions collection, which survives restarts and expires
+ * entries through a TTL index.
+ *
+ * A new photo of the same receipt has different bytes, so with
+ * {@code receipts.cache.similar.enabled} the perceptual hashes of recent uploads are also
+ * kept in a ring, and an upload whose hash is within a few bits of one of them reuses that
+ * upload's result. Off by default: the hash is a 9x8 grid of the whole image, and
+ * receipts are mostly white paper with similar dark print, so two different receipts
+ * (especially from the same store) can land within a few bits. The ring is shared by all
+ * users, so a false match would hand one user another's ingredients.
+ *
+ * Mongo failures only cost the cache hit; they never fail the extraction.
+ */
+@Component
+public class ReceiptExtractionCache {
+
+    // Hex characters in a SHA-256
+    private static final int CONTENT_HASH_LENGTH = 64;
+
+    private final MongoTemplate mongoTemplate;
+    private final Duration ttl;
+    private final boolean similarEnabled;
+    private final int maxPerceptualDistance;
+
+    private final LruCache<String, List<String>> exact;
+
+    // Recent (perceptual hash, cache key) pairs, newest at head - 1
+    private final ReentrantLock ringLock = new ReentrantLock();
+    private final long[] perceptualHashes;
+    private final String[] keys;
+    private int head;
+    private int count;
+
+    private final Counter similarHits;
+
+    public ReceiptExtractionCache(MongoTemplate mongoTemplate,
+                                  @Value("${receipts.cache.max-entries:2000}") int maxEntries,
+                                  @Value("${receipts.cache.ttl:P7D}") Duration ttl,
+                                  @Value("${receipts.cache.similar.enabled:false}") boolean similarEnabled,
+                                  @Value("${receipts.cache.similar-max-bits:6}") int maxPerceptualDistance,
+                                  MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.ttl = ttl;
+        this.similarEnabled = similarEnabled;
+        this.maxPerceptualDistance = maxPerceptualDistance;
+        int capacity = Math.max(1, maxEntries);
+        this.exact = new LruCache<>(capacity, ttl, ingredients -> 1);
+        this.exact.bindTo(meterRegistry, "receipt-extraction");
+        this.perceptualHashes = new long[capacity];
+        this.keys = new String[capacity];
+        this.similarHits = Counter.builder("receipt.extraction.similar.hits")
+                .description("Uploads answered with the result of a near-identical earlier upload")
+                .register(meterRegistry);
+    }
+
+    // Reloads the recent perceptual hashes so recaptures still match after a restart
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!similarEnabled) {
+            return;
+        }
+        StartupTasks.runInBackground("receipt-cache-warmup", "Receipt extraction cache warm-up failed", () -> {
+            Query query = new Query(Criteria.where("perceptual_hash").ne(null))
+                    .with(Sort.by(Sort.Direction.DESC, "created_at"))
+                    .limit(perceptualHashes.length);
+            query.fields().include("perceptual_hash");
+            List<ReceiptExtraction> recent = mongoTemplate.find(query, ReceiptExtraction.class);
+            // Oldest first, so the newest end up newest in the ring
+            for (int i = recent.size() - 1; i >= 0; i--) {
+                remember(recent.get(i).getPerceptualHash(), recent.get(i).getId());
+            }
+        });
+    }
+
+    /** Hex SHA-256 of the upload, read through its stream rather than copied into memory. */
+    public static String contentHash(MultipartFile upload) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(upload.getInputStream(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** Returns the ingredients extracted from an upload with exactly these bytes, or null. */
+    public List<String> get(String key) {
+        List<String> cached = exact.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            ReceiptExtraction stored = mongoTemplate.findById(key, ReceiptExtraction.class);
+            // The TTL monitor runs about once a minute, so expired documents can still be read
+            if (stored == null || stored.getCreatedAt() == null
+                    || stored.getCreatedAt().plus(ttl).isBefore(LocalDateTime.now())) {
+                return null;
+            }
+            exact.put(key, stored.getIngredients());
+            return stored.getIngredients();
+        } catch (Exception e) {
+            System.err.println("Receipt extraction cache read failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the ingredients extracted from a recent upload that looks the same, or null.
+     * The result is also stored under this upload's key, so sending it again is an exact hit.
+     * Always null unless the near-duplicate tier is enabled.
+     */
+    public List<String> getSimilar(String key, Long perceptualHash) {
+        if (!similarEnabled || perceptualHash == null) {
+            return null;
+        }
+        String prefix = prefixOf(key);
+        String similarTo = null;
+        int best = maxPerceptualDistance + 1;
+        ringLock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                int distance = PerceptualHash.distance(perceptualHash, perceptualHashes[i]);
+                // Only results that depend on the same things besides the image
+                if (distance < best && keys[i].startsWith(prefix) && keys[i].length() == key.length()) {
+                    best = distance;
+                    similarTo = keys[i];
+                }
+            }
+        } finally {
+            ringLock.unlock();
+        }
+        if (similarTo == null) {
+            return null;
+        }
+        List<String> ingredients = get(similarTo);
+        if (ingredients != null) {
+            similarHits.increment();
+            put(key, perceptualHash, ingredients);
+        }
+        return ingredients;
+    }
+
+    public void put(String key, Long perceptualHash, List<String> ingredients) {
+        List<String> copy = List.copyOf(ingredients);
+        exact.put(key, copy);
+        if (similarEnabled && perceptualHash != null) {
+            remember(perceptualHash, key);
+        }
+        try {
+            mongoTemplate.save(new ReceiptExtraction(key, perceptualHash, copy, LocalDateTime.now()));
+        } catch (Exception e) {
+            System.err.println("Receipt extraction cache write failed: " + e.getMessage());
+        }
+    }
+
+    // Whatever the caller put in front of the content hash
+    private static String prefixOf(String key) {
+        return key.substring(0, Math.max(0, key.length() - CONTENT_HASH_LENGTH));
+    }
+
+    private void remember(long perceptualHash, String key) {
+        ringLock.lock();
+        try {
+            perceptualHashes[head] = perceptualHash;
+            keys[head] = key;
+            head = (head + 1) % perceptualHashes.length;
+            count = Math.min(count + 1, perceptualHashes.length);
+        } finally {
+            ringLock.unlock();
+        }
+    }
+}
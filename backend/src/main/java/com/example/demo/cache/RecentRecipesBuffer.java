@@ -0,0 +1,183 @@
+package com.example.demo.cache;
+
+import com.example.demo.model.Recipe;
+import com.example.demo.repository.RecipeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Ring buffer of the newest recipes, so the home screen's recent feed never touches Mongo.
+ *
+ * Loaded lazily from the created_at index, then kept fresh by the write path: new recipes
+ * are inserted in feed order (overwriting the oldest slot), edits replace the buffered copy,
+ * and deletes drop the buffer so the next read reloads it. Recipes written past this node
+ * (the import script, other instances) are picked up when the buffer expires and reloads.
+ */
+@Component
+public class RecentRecipesBuffer {
+
+    // The feed's order: created_at descending with missing times last, then _id descending.
+    // Times are compared at Mongo's millisecond precision so the buffer and the cursor agree.
+    static final Comparator<Recipe> FEED_ORDER = Comparator
+            .comparing((Recipe recipe) -> storedTime(recipe.getCreatedAt()),
+                    Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Recipe::getId, Comparator.reverseOrder());
+
+    private final RecipeRepository recipeRepository;
+    private final int capacity;
+    private final long reloadAfterNanos;
+    // System.nanoTime outside tests
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Recipe[] ring;
+    // Slot of the newest recipe; the rest follow at head + 1, head + 2, ... (mod capacity)
+    private int head;
+    private int count;
+    private boolean loaded;
+    private long loadedAt;
+
+    @Autowired
+    public RecentRecipesBuffer(RecipeRepository recipeRepository,
+                               @Value("${recipes.recent.buffer-size:50}") int capacity,
+                               @Value("${recipes.recent.reload-after:PT1M}") Duration reloadAfter) {
+        this(recipeRepository, capacity, reloadAfter, System::nanoTime);
+    }
+
+    RecentRecipesBuffer(RecipeRepository recipeRepository, int capacity, Duration reloadAfter, LongSupplier nanoClock) {
+        this.recipeRepository = recipeRepository;
+        this.capacity = Math.max(1, capacity);
+        this.reloadAfterNanos = reloadAfter.toNanos();
+        this.nanoClock = nanoClock;
+        this.ring = new Recipe[this.capacity];
+    }
+
+    /**
+     * Returns the newest {@code limit} recipes, newest first, or null if the buffer cannot
+     * answer (it holds fewer than that while the collection has more).
+     */
+    public List<Recipe> newest(int limit) {
+        lock.lock();
+        try {
+            if (!loaded || nanoClock.getAsLong() - loadedAt >= reloadAfterNanos) {
+                load();
+            }
+            // A buffer that isn't full holds the whole collection
+            if (limit > count && count == capacity) {
+                return null;
+            }
+            int n = Math.min(limit, count);
+            List<Recipe> recipes = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                recipes.add(ring[slot(i)]);
+            }
+            return recipes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a newly created recipe at its place in the feed. Concurrent creates can arrive
+     * out of created_at order, so it is not always the newest.
+     */
+    public void add(Recipe recipe) {
+        lock.lock();
+        try {
+            if (!loaded) {
+                // The first read loads it from Mongo
+                return;
+            }
+            int position = 0;
+            while (position < count) {
+                Recipe buffered = ring[slot(position)];
+                if (buffered.getId().equals(recipe.getId())) {
+                    // A reload already read it from Mongo
+                    ring[slot(position)] = recipe;
+                    return;
+                }
+                if (FEED_ORDER.compare(recipe, buffered) < 0) {
+                    break;
+                }
+                position++;
+            }
+            if (position == capacity) {
+                // Older than everything in a full buffer, so it is not among the newest
+                return;
+            }
+            if (position == 0) {
+                head = (head - 1 + capacity) % capacity;
+            } else {
+                // Shift the older ones back a slot; a full buffer loses its oldest
+                for (int i = Math.min(count, capacity - 1); i > position; i--) {
+                    ring[slot(i)] = ring[slot(i - 1)];
+                }
+            }
+            ring[slot(position)] = recipe;
+            count = Math.min(count + 1, capacity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Replaces the buffered copy of an edited recipe, if it is buffered. */
+    public void replace(Recipe recipe) {
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                int slot = slot(i);
+                if (ring[slot].getId().equals(recipe.getId())) {
+                    ring[slot] = recipe;
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Drops the buffer; the next read reloads it. */
+    public void invalidate() {
+        lock.lock();
+        try {
+            loaded = false;
+            count = 0;
+            head = 0;
+            Arrays.fill(ring, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller must hold the lock
+    private void load() {
+        List<Recipe> newest = recipeRepository.findRecent(null, capacity);
+        Arrays.fill(ring, null);
+        for (int i = 0; i < newest.size(); i++) {
+            ring[i] = newest.get(i);
+        }
+        head = 0;
+        count = newest.size();
+        loaded = true;
+        loadedAt = nanoClock.getAsLong();
+    }
+
+    private int slot(int position) {
+        return (head + position) % capacity;
+    }
+
+    private static LocalDateTime storedTime(LocalDateTime time) {
+        return time != null ? time.truncatedTo(ChronoUnit.MILLIS) : null;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.demo.cache;
+
+import com.example.demo.search.IngredientCanonicalizer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Caches AI-generated recipes per pantry, and lets concurrent requests for the same pantry
+ * share one model call.
+ *
+ * The key is the model/prompt version plus the sorted, de-duplicated canonical ingredient
+ * names, so "Tomatoes, eggs" and "egg, tomato" are one entry. The first request for a key
+ * that isn't cached makes the call; requests arriving while it runs wait for its result
+ * instead of starting their own. Failures are passed to every waiter and not cached.
+ * Streamed generations are shared the same way, with fragments already sent replayed to
+ * requests that join late.
+ */
+@Component
+public class RecipeGenerationCache {
+
+    private final LruCache<String, String> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Flux<String>> streamsInFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public RecipeGenerationCache(@Value("${recipes.generate.cache.max-entries:500}") long maxEntries,
+                                 @Value("${recipes.generate.cache.ttl:PT6H}") Duration ttl,
+                                 MeterRegistry meterRegistry) {
+        this.cache = new LruCache<>(maxEntries, ttl, markdown -> 1);
+        this.cache.bindTo(meterRegistry, "recipe-generation");
+        this.coalesced = Counter.builder("recipe.generation.coalesced")
+                .description("Generation requests that waited for an identical call already in flight")
+                .register(meterRegistry);
+    }
+
+    public static String key(String version, List<String> ingredients) {
+        List<String> canonical = ingredients.stream()
+                .filter(Objects::nonNull)
+                .map(IngredientCanonicalizer::canonicalizeOrLiteral)
+                .filter(s -> !s.isEmpty())
+                .distinct()
+                .sorted()
+                .toList();
+        return version + "|" + String.join("\u0000", canonical);
+    }
+
+    /** The cached value, without generating it. */
+    public String getIfPresent(String key) {
+        return cache.get(key);
+    }
+
+    /** Stores a value generated outside {@link #get}, e.g. assembled from a stream. */
+    public void put(String key, String value) {
+        cache.put(key, value);
+    }
+
+    /**
+     * Returns the cached value for the key, or generates it, at most once at a time per key.
+     * The call runs to completion and is cached even if the request that started it goes
+     * away, since others may be waiting for it.
+     */
+    public Mono<String> get(String key, Supplier<Mono<String>> generate) {
+        return Mono.defer(() -> {
+            String cached = cache.get(key);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+
+            CompletableFuture<String> call = new CompletableFuture<>();
+            CompletableFuture<String> running = inFlight.putIfAbsent(key, call);
+            if (running != null) {
+                coalesced.increment();
+                return Mono.fromFuture(running, true);
+            }
+            // Deferred, so a supplier that throws fails the call and frees the slot like an error signal
+            Mono.defer(generate).subscribe(
+                    value -> {
+                        // Cached before the slot is released, so later requests hit the cache instead
+                        cache.put(key, value);
+                        inFlight.remove(key, call);
+                        call.complete(value);
+                    },
+                    error -> {
+                        inFlight.remove(key, call);
+                        call.completeExceptionally(error);
+                    },
+                    () -> {
+                        if (!call.isDone()) {
+                            inFlight.remove(key, call);
+                            call.completeExceptionally(new IllegalStateException("Generation returned nothing"));
+                        }
+                    });
+            // Waiters unsubscribing must not cancel the shared call
+            return Mono.fromFuture(call, true);
+        });
+    }
+
+    /**
+     * The streamed counterpart of {@link #get}: a cached value as one fragment, or the
+     * generated fragments, with at most one generation running per key. Joining requests
+     * get the fragments sent so far replayed, then the rest as they arrive. A stream that
+     * runs to the end is cached whole; like {@link #get}, it keeps running when the request
+     * that started it goes away.
+     */
+    public Flux<String> stream(String key, Supplier<Flux<String>> generate) {
+        return Flux.defer(() -> {
+            String cached = cache.get(key);
+            if (cached != null) {
+                return Flux.just(cached);
+            }
+
+            StringBuilder value = new StringBuilder();
+            AtomicReference<Flux<String>> self = new AtomicReference<>();
+            Flux<String> call = Flux.defer(generate)
+                    .doOnNext(value::append)
+                    .doOnComplete(() -> {
+                        // Cached before the slot is released, so later requests hit the cache instead
+                        if (!value.isEmpty()) {
+                            cache.put(key, value.toString());
+                        }
+                    })
+                    .doFinally(signal -> streamsInFlight.remove(key, self.get()))
+                    // Never disconnects, so waiters unsubscribing don't cancel the shared call
+                    .replay()
+                    .autoConnect();
+            self.set(call);
+            Flux<String> running = streamsInFlight.putIfAbsent(key, call);
+            if (running != null) {
+                coalesced.increment();
+                return running;
+            }
+            return call;
+        });
+    }
+}
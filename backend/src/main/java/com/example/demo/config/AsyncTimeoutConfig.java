@@ -0,0 +1,57 @@
+package com.example.demo.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Per-response async timeouts. spring.mvc.async.request-timeout applies to every async
+ * response; a handler whose response legitimately takes longer (a catalog export, a model
+ * call) calls {@link #extendTimeout} while it handles the request, and only that response
+ * gets the longer timeout.
+ */
+@Configuration
+public class AsyncTimeoutConfig implements WebMvcConfigurer {
+
+    private static final String TIMEOUT_ATTRIBUTE = AsyncTimeoutConfig.class.getName() + ".timeout";
+
+    /** Gives the async response of the current request this timeout instead of the default. */
+    public static void extendTimeout(Duration timeout) {
+        RequestContextHolder.currentRequestAttributes()
+                .setAttribute(TIMEOUT_ATTRIBUTE, timeout, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // Both run after Spring applied the default timeout and before async processing starts
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                applyTimeout(request);
+            }
+        });
+        configurer.registerDeferredResultInterceptors(new DeferredResultProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, DeferredResult<T> deferredResult) {
+                applyTimeout(request);
+            }
+        });
+    }
+
+    private static void applyTimeout(NativeWebRequest request) {
+        if (request.getAttribute(TIMEOUT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Duration timeout
+                && request instanceof AsyncWebRequest asyncRequest) {
+            asyncRequest.setTimeout(timeout.toMillis());
+        }
+    }
+}
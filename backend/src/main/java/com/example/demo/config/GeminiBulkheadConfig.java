@@ -0,0 +1,47 @@
+package com.example.demo.config;
+
+import com.example.demo.limit.AdaptiveBulkhead;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Separate concurrency limits for the two kinds of Gemini calls, so a burst of receipt
+ * uploads can't use up the capacity recipe generation needs, and the other way round.
+ */
+@Configuration
+public class GeminiBulkheadConfig {
+
+    @Bean
+    public AdaptiveBulkhead extractionBulkhead(
+            @Value("${gemini.bulkhead.extraction.initial-limit:4}") int initialLimit,
+            @Value("${gemini.bulkhead.extraction.min-limit:1}") int minLimit,
+            @Value("${gemini.bulkhead.extraction.max-limit:16}") int maxLimit,
+            @Value("${gemini.bulkhead.extraction.max-queue:50}") int maxQueue,
+            @Value("${gemini.bulkhead.extraction.queue-timeout:10s}") Duration queueTimeout,
+            @Value("${gemini.bulkhead.extraction.latency-target:15s}") Duration latencyTarget,
+            MeterRegistry meterRegistry) {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("extraction", initialLimit, minLimit, maxLimit, maxQueue,
+                queueTimeout, latencyTarget);
+        bulkhead.bindTo(meterRegistry);
+        return bulkhead;
+    }
+
+    @Bean
+    public AdaptiveBulkhead generationBulkhead(
+            @Value("${gemini.bulkhead.generation.initial-limit:4}") int initialLimit,
+            @Value("${gemini.bulkhead.generation.min-limit:1}") int minLimit,
+            @Value("${gemini.bulkhead.generation.max-limit:16}") int maxLimit,
+            @Value("${gemini.bulkhead.generation.max-queue:50}") int maxQueue,
+            @Value("${gemini.bulkhead.generation.queue-timeout:10s}") Duration queueTimeout,
+            @Value("${gemini.bulkhead.generation.latency-target:30s}") Duration latencyTarget,
+            MeterRegistry meterRegistry) {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("generation", initialLimit, minLimit, maxLimit, maxQueue,
+                queueTimeout, latencyTarget);
+        bulkhead.bindTo(meterRegistry);
+        return bulkhead;
+    }
+}
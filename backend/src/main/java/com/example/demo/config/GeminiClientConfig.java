@@ -0,0 +1,90 @@
+package com.example.demo.config;
+
+import com.example.demo.limit.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one HTTP client every Gemini call goes through, so TLS sessions and HTTP/2
+ * connections stay warm between calls instead of being set up per request.
+ *
+ * The pool publishes reactor.netty.connection.provider.* metrics with name=gemini: active,
+ * idle and total connections, pending acquires and the time they wait for a connection.
+ */
+@Configuration
+public class GeminiClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider geminiConnectionProvider(
+            @Value("${gemini.http.max-connections:50}") int maxConnections,
+            @Value("${gemini.http.pending-acquire-max:200}") int pendingAcquireMax,
+            @Value("${gemini.http.pending-acquire-timeout:10s}") Duration pendingAcquireTimeout,
+            @Value("${gemini.http.max-idle-time:30s}") Duration maxIdleTime,
+            @Value("${gemini.http.max-life-time:5m}") Duration maxLifeTime) {
+        return ConnectionProvider.builder("gemini")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                // Closed here rather than found dead by the next request after the server drops them
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(maxIdleTime)
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient geminiWebClient(WebClient.Builder builder,
+                                     ConnectionProvider geminiConnectionProvider,
+                                     @Value("${gemini.http.connect-timeout:5s}") Duration connectTimeout,
+                                     @Value("${gemini.http.response-timeout:90s}") Duration responseTimeout,
+                                     @Value("${gemini.http.read-timeout:30s}") Duration readTimeout) {
+        HttpClient httpClient = HttpClient.create(geminiConnectionProvider)
+                // HTTP/2 when the server offers it through ALPN, so concurrent calls share one connection
+                .protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                .compress(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                // Longest silence after the request is sent; a non-streamed answer is silent until it is all generated
+                .responseTimeout(responseTimeout)
+                // Once the status line is in, a body that stops arriving (a stalled stream) fails sooner
+                .doOnResponse((response, connection) -> connection.addHandlerLast(
+                        new ReadTimeoutHandler(readTimeout.toMillis(), TimeUnit.MILLISECONDS)));
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .baseUrl("https://generativelanguage.googleapis.com")
+                .defaultHeader("Content-Type", "application/json")
+                .build();
+    }
+
+    /**
+     * One breaker for the whole Gemini API, so an outage seen by receipt extraction also
+     * stops recipe generation from waiting on it, and the other way round.
+     */
+    @Bean
+    public CircuitBreaker geminiCircuitBreaker(
+            @Value("${gemini.circuit.window-size:20}") int windowSize,
+            @Value("${gemini.circuit.minimum-calls:10}") int minimumCalls,
+            @Value("${gemini.circuit.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${gemini.circuit.slow-call-threshold:60s}") Duration slowCallThreshold,
+            @Value("${gemini.circuit.open-duration:30s}") Duration openDuration,
+            @Value("${gemini.circuit.half-open-calls:2}") int halfOpenCalls,
+            MeterRegistry meterRegistry) {
+        CircuitBreaker breaker = new CircuitBreaker("gemini", windowSize, minimumCalls, failureRateThreshold,
+                slowCallThreshold, openDuration, halfOpenCalls);
+        breaker.bindTo(meterRegistry);
+        return breaker;
+    }
+}
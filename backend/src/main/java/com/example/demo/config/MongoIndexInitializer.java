@@ -0,0 +1,124 @@
+package com.example.demo.config;
+
+import com.example.demo.model.CanonicalIngredient;
+import com.example.demo.model.Ingredient;
+import com.example.demo.model.ReceiptExtraction;
+import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipeTombstone;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Creates the indexes the filtered recipe queries and the canonical ingredient registry rely on. Runs once at startup on a
+ * background thread; createIndex is a no-op for indexes that already exist.
+ */
+@Component
+@RequiredArgsConstructor
+public class MongoIndexInitializer {
+    
+    private final MongoTemplate mongoTemplate;
+    
+    @Value("${receipts.cache.ttl:P7D}")
+    private Duration receiptCacheTtl;
+    
+    @Value("${recipes.search.snapshot.tombstone-retention:P30D}")
+    private Duration tombstoneRetention;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        StartupTasks.runInBackground("mongo-index-init", "Failed to create MongoDB indexes", () -> {
+            createRecipeIndexes();
+            createCanonicalIngredientIndexes();
+            createIngredientIndexes();
+            createReceiptExtractionIndexes();
+            createRecipeTombstoneIndexes();
+        });
+    }
+    
+    private void createRecipeIndexes() {
+        IndexOperations recipes = mongoTemplate.indexOps(Recipe.class);
+        
+        // Diet type is an equality match, so it leads the compound indexes it appears in
+        recipes.createIndex(new Index()
+                .on("tags", Sort.Direction.ASC)
+                .on("nutrition.calories", Sort.Direction.ASC)
+                .named("tags_calories"));
+        recipes.createIndex(new Index()
+                .on("tags", Sort.Direction.ASC)
+                .on("prep_time_minutes", Sort.Direction.ASC)
+                .named("tags_prep_time"));
+        recipes.createIndex(new Index()
+                .on("nutrition.calories", Sort.Direction.ASC)
+                .on("nutrition.protein", Sort.Direction.ASC)
+                .named("calories_protein"));
+        recipes.createIndex(new Index()
+                .on("nutrition.protein", Sort.Direction.ASC)
+                .named("protein"));
+        recipes.createIndex(new Index()
+                .on("prep_time_minutes", Sort.Direction.ASC)
+                .on("cook_time_minutes", Sort.Direction.ASC)
+                .named("prep_time_cook_time"));
+        recipes.createIndex(new Index()
+                .on("cook_time_minutes", Sort.Direction.ASC)
+                .named("cook_time"));
+        
+        // Recent feed: sort and cursor seek on the same keys, newest first
+        recipes.createIndex(new Index()
+                .on("created_at", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("created_at_id"));
+        
+        // Search index snapshot catch-up: recipes changed since the snapshot was taken
+        recipes.createIndex(new Index()
+                .on("updated_at", Sort.Direction.ASC)
+                .named("updated_at"));
+        
+        System.out.println("Recipe indexes are in place");
+    }
+    
+    /**
+     * Unique index on the normalized ingredient name, which detection relies on to resolve
+     * concurrent inserts. Sparse, so ingredients that predate the field don't collide.
+     * Public because the backfill must not fill the field in before the index exists.
+     */
+    public void createIngredientIndexes() {
+        mongoTemplate.indexOps(Ingredient.class).createIndex(new Index()
+                .on("normalized_name", Sort.Direction.ASC)
+                .unique()
+                .sparse()
+                .named("normalized_name_unique"));
+    }
+    
+    private void createReceiptExtractionIndexes() {
+        // Expires cached receipt extractions; also serves the newest-first warm-up read
+        mongoTemplate.indexOps(ReceiptExtraction.class).createIndex(new Index()
+                .on("created_at", Sort.Direction.DESC)
+                .expire(receiptCacheTtl)
+                .named("created_at_ttl"));
+    }
+    
+    private void createRecipeTombstoneIndexes() {
+        // Expires tombstones; also serves the search index catch-up read of recent deletions
+        mongoTemplate.indexOps(RecipeTombstone.class).createIndex(new Index()
+                .on("deleted_at", Sort.Direction.ASC)
+                .expire(tombstoneRetention)
+                .named("deleted_at_ttl"));
+    }
+    
+    private void createCanonicalIngredientIndexes() {
+        // The registry relies on this to resolve two nodes interning the same name at once
+        mongoTemplate.indexOps(CanonicalIngredient.class).createIndex(new Index()
+                .on("name", Sort.Direction.ASC)
+                .unique()
+                .named("name_unique"));
+    }
+}
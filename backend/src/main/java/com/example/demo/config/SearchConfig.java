@@ -0,0 +1,26 @@
+package com.example.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+@Configuration
+public class SearchConfig {
+    
+    /**
+     * Dedicated pool for parallel recipe scoring. Kept separate from the common pool so a
+     * large search can't starve Reactor or other code that relies on it.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool recipeSearchPool(@Value("${recipes.search.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("recipe-search-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.demo.config;
+
+/**
+ * Runs the work components do once the application is ready (index builds, cache warm-ups,
+ * backfills) off the startup path, so the app starts serving while Mongo is still being read.
+ *
+ * Each task gets its own daemon thread: an unreachable Mongo must not keep the JVM from
+ * shutting down. A failure is logged and not rethrown, since every caller either loads
+ * lazily on first use or is retried by its next scheduled refresh.
+ */
+public final class StartupTasks {
+
+    private StartupTasks() {
+    }
+
+    /**
+     * Starts the task on a daemon thread with the given name. If it throws, the failure
+     * message is logged together with the exception's.
+     */
+    public static void runInBackground(String threadName, String failureMessage, Runnable task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                System.err.println(failureMessage + ": " + e.getMessage());
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ThreadingConfig {
+    
+    /**
+     * Where reactive code runs its blocking parts: image decoding, hashing, Mongo reads and
+     * writes, request body copies. With spring.threads.virtual.enabled each task gets its
+     * own virtual thread, otherwise it is Reactor's shared bounded elastic pool. Virtual
+     * threads bound nothing: work that needs a limit takes it itself, as image decoding does
+     * with receipts.image.max-concurrent. CPU-bound work such as recipe scoring stays on its
+     * own platform pool either way.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingScheduler(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            return Schedulers.fromExecutorService(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("blocking-", 0).factory()),
+                    "blocking-virtual");
+        }
+        // A new pool with the shared one's limits, since disposing the shared one would break other users
+        return Schedulers.newBoundedElastic(Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "blocking", 60, true);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier while blocked, which on Java 21
+ * means blocking inside a synchronized block or a native frame. Each one holds a carrier
+ * thread hostage for its whole wait, so enough of them serialize request handling again.
+ *
+ * Listens to the JFR jdk.VirtualThreadPinned event in-process: every pin longer than
+ * {@code threads.virtual.pinned-threshold} increments jvm.threads.virtual.pinned and logs
+ * the top of the stack where it happened. Only active with spring.threads.virtual.enabled.
+ */
+@Component
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+
+    private final boolean enabled;
+    private final Duration threshold;
+    private final Counter pinned;
+    private volatile RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(@Value("${spring.threads.virtual.enabled:false}") boolean enabled,
+                                       @Value("${threads.virtual.pinned-threshold:20ms}") Duration threshold,
+                                       MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.pinned = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads that blocked while pinned to their carrier")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            RecordingStream recording = new RecordingStream();
+            recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+            recording.onEvent(PINNED_EVENT, this::report);
+            recording.startAsync();
+            stream = recording;
+        } catch (RuntimeException e) {
+            // JFR can be unavailable (e.g. disabled in the runtime image); the app runs without the diagnostics
+            System.err.println("Virtual thread pinning monitor not started: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        RecordingStream recording = stream;
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    private void report(RecordedEvent event) {
+        pinned.increment();
+        StringBuilder message = new StringBuilder("Virtual thread pinned for ")
+                .append(event.getDuration().toMillis()).append(" ms");
+        if (event.getThread() != null) {
+            message.append(" on ").append(event.getThread().getJavaName());
+        }
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> frames = event.getStackTrace().getFrames();
+            for (RecordedFrame frame : frames.subList(0, Math.min(LOGGED_FRAMES, frames.size()))) {
+                message.append("\n    at ").append(frame.getMethod().getType().getName())
+                        .append('.').append(frame.getMethod().getName())
+                        .append(':').append(frame.getLineNumber());
+            }
+        }
+        System.err.println(message);
+    }
+}
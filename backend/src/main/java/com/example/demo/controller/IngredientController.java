@@ -1,28 +1,56 @@
 package com.example.demo.controller;
 
+import com.example.demo.config.AsyncTimeoutConfig;
+import com.example.demo.limit.UpstreamRejectedException;
 import com.example.demo.model.Ingredient;
+import com.example.demo.model.IngredientPage;
+import com.example.demo.service.DuplicateIngredientException;
 import com.example.demo.service.IngredientService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/ingredients")
 @RequiredArgsConstructor
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = RecipeController.NEXT_CURSOR_HEADER)
 public class IngredientController {
     
     private final IngredientService ingredientService;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${gemini.request-timeout:2m}")
+    private Duration geminiRequestTimeout;
     
     @GetMapping
-    public ResponseEntity<List<Ingredient>> getAllIngredients() {
-        List<Ingredient> ingredients = ingredientService.getAllIngredients();
-        return ResponseEntity.ok(ingredients);
+    public ResponseEntity<List<Ingredient>> getAllIngredients(
+            @RequestParam(defaultValue = "" + IngredientService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) String after
+    ) {
+        IngredientPage page = ingredientService.getIngredientsPage(limit, after);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(RecipeController.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getIngredients());
+    }
+    
+    // Whole collection as NDJSON, written straight from the Mongo cursor
+    @GetMapping(value = "/stream", produces = NdjsonResponses.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllIngredients() {
+        return NdjsonResponses.of(objectMapper, ingredientService::streamAllIngredients);
     }
     
     @GetMapping("/{id}")
@@ -35,11 +63,26 @@ public class IngredientController {
     }
     
     @PostMapping("/detect")
-    public ResponseEntity<Map<String, Object>> detectIngredients(
+    public Mono<ResponseEntity<Map<String, Object>>> detectIngredients(
             @RequestParam("image") MultipartFile image
-    ) throws IOException {
-        Map<String, Object> ingredients = ingredientService.detectIngredients(image);
-        return ResponseEntity.ok(ingredients);
+    ) {
+        // Async: no servlet thread is held while Gemini reads the receipt
+        AsyncTimeoutConfig.extendTimeout(geminiRequestTimeout);
+        return ingredientService.detectIngredients(image).map(ResponseEntity::ok)
+                .onErrorResume(UpstreamRejectedException.class, e -> Mono.just(ResponseEntity
+                        .status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                        .body(Map.of("success", false, "message", "Ingredient detection is busy, please try again shortly"))));
+    }
+    
+    // Typeahead for the ingredients screen, answered from memory
+    @GetMapping("/suggest")
+    public ResponseEntity<List<String>> suggestIngredients(
+            @RequestParam("q") String prefix,
+            @RequestParam(defaultValue = "" + IngredientService.DEFAULT_SUGGESTIONS) int limit
+    ) {
+        List<String> suggestions = ingredientService.suggestIngredients(prefix, limit);
+        return ResponseEntity.ok(suggestions);
     }
     
     @PostMapping("/search")
@@ -77,4 +120,19 @@ public class IngredientController {
         }
         return ResponseEntity.notFound().build();
     }
+
+    // The body carries the ingredient already holding the name, so the client can use it instead
+    @ExceptionHandler(DuplicateIngredientException.class)
+    public ResponseEntity<Map<String, Object>> handleConflict(DuplicateIngredientException e) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("success", false);
+        body.put("message", e.getMessage());
+        body.put("existing", e.getExisting());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+    }
+    
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+    }
 }
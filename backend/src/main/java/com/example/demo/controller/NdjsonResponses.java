@@ -0,0 +1,58 @@
+package com.example.demo.controller;
+
+import com.example.demo.config.AsyncTimeoutConfig;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes a stream of documents as newline-delimited JSON, one document per line, as they
+ * come off the Mongo cursor. Nothing is collected first, so memory use does not grow with
+ * the size of the collection.
+ */
+final class NdjsonResponses {
+    
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    
+    // Documents written between explicit flushes, so a slow client sees steady progress
+    private static final int FLUSH_EVERY = 256;
+    // A full catalog export outlives the default async timeout; other responses keep it
+    private static final Duration EXPORT_TIMEOUT = Duration.ofMinutes(10);
+    
+    private NdjsonResponses() {
+    }
+    
+    /** The stream is opened on the response thread and closed when writing finishes or fails. */
+    static <T> ResponseEntity<StreamingResponseBody> of(ObjectMapper objectMapper, Supplier<Stream<T>> source) {
+        AsyncTimeoutConfig.extendTimeout(EXPORT_TIMEOUT);
+        // Lines are separated by the explicit newline below, not Jackson's default space
+        ObjectWriter writer = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("");
+        StreamingResponseBody body = out -> {
+            try (Stream<T> items = source.get();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                int written = 0;
+                for (Iterator<T> it = items.iterator(); it.hasNext(); ) {
+                    writer.writeValue(generator, it.next());
+                    generator.writeRaw('\n');
+                    if (++written % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+}
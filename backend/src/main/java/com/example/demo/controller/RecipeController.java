@@ -1,26 +1,54 @@
 package com.example.demo.controller;
 
+import com.example.demo.config.AsyncTimeoutConfig;
 import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipeFilterRequest;
+import com.example.demo.model.RecipePage;
 import com.example.demo.service.RecipeService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/recipes")
 @RequiredArgsConstructor
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = RecipeController.NEXT_CURSOR_HEADER)
 public class RecipeController {
     
+    // Paged endpoints return the page as the body and the next page's cursor in this header
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
     private final RecipeService recipeService;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${gemini.request-timeout:2m}")
+    private Duration geminiRequestTimeout;
     
     @GetMapping
-    public ResponseEntity<List<Recipe>> getAllRecipes() {
-        List<Recipe> recipes = recipeService.getAllRecipes();
-        return ResponseEntity.ok(recipes);
+    public ResponseEntity<List<Recipe>> getAllRecipes(
+            @RequestParam(defaultValue = "" + RecipeService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) String after
+    ) {
+        RecipePage page = recipeService.getRecipesPage(limit, after);
+        return pageResponse(page);
+    }
+    
+    // Whole catalog as NDJSON, written straight from the Mongo cursor
+    @GetMapping(value = "/stream", produces = NdjsonResponses.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllRecipes() {
+        return NdjsonResponses.of(objectMapper, recipeService::streamAllRecipes);
     }
     
     @GetMapping("/{id}")
@@ -57,13 +85,17 @@ public class RecipeController {
     }
     
     @PostMapping("/search")
-    public ResponseEntity<List<Recipe>> searchRecipesByIngredients(@RequestBody List<String> ingredients) {
-        List<Recipe> recipes = recipeService.searchRecipesByIngredients(ingredients);
-        return ResponseEntity.ok(recipes);
+    public ResponseEntity<List<Recipe>> searchRecipesByIngredients(
+            @RequestBody List<String> ingredients,
+            @RequestParam(defaultValue = "" + RecipeService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) String cursor
+    ) {
+        RecipePage page = recipeService.searchRecipesByIngredients(ingredients, limit, cursor);
+        return pageResponse(page);
     }
     
     @PostMapping("/search/filters")
-    public ResponseEntity<List<Recipe>> searchRecipesWithFilters(@RequestBody Map<String, Object> filters) {
+    public ResponseEntity<List<Recipe>> searchRecipesWithFilters(@RequestBody RecipeFilterRequest filters) {
         List<Recipe> recipes = recipeService.searchRecipesWithFilters(filters);
         return ResponseEntity.ok(recipes);
     }
@@ -93,21 +125,50 @@ public class RecipeController {
     }
     
     @GetMapping("/popular")
-    public ResponseEntity<List<Recipe>> getPopularRecipes() {
-        List<Recipe> recipes = recipeService.getPopularRecipes();
-        return ResponseEntity.ok(recipes);
+    public ResponseEntity<List<Recipe>> getPopularRecipes(
+            @RequestParam(defaultValue = "" + RecipeService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) String after
+    ) {
+        RecipePage page = recipeService.getPopularRecipes(limit, after);
+        return pageResponse(page);
     }
     
     @GetMapping("/recent")
-    public ResponseEntity<List<Recipe>> getRecentRecipes() {
-        List<Recipe> recipes = recipeService.getRecentRecipes();
-        return ResponseEntity.ok(recipes);
+    public ResponseEntity<List<Recipe>> getRecentRecipes(
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) String after
+    ) {
+        RecipePage page = recipeService.getRecentRecipes(limit, after);
+        return pageResponse(page);
     }
 
     @PostMapping("/generate")
-    public ResponseEntity<String> generateRecipes(@RequestBody List<String> ingredients) {
-        String markdownRecipes = recipeService.generateRecipesFromAI(ingredients);
-        return ResponseEntity.ok(markdownRecipes);
+    public Mono<ResponseEntity<String>> generateRecipes(@RequestBody List<String> ingredients) {
+        // Async: no servlet thread is held while the model generates
+        AsyncTimeoutConfig.extendTimeout(geminiRequestTimeout);
+        return recipeService.generateRecipesFromAI(ingredients).map(ResponseEntity::ok)
+                // Gemini failed; an error message must not pass for recipes with a 200
+                .onErrorResume(e -> {
+                    e.printStackTrace();
+                    return Mono.just(ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                            .body("Error generating recipes: " + e.getMessage()));
+                });
+    }
+
+    // Server-sent events: one event per Markdown fragment as the model writes it, then "done",
+    // or an "error" event if generation fails part way
+    @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamGeneratedRecipes(@RequestBody List<String> ingredients) {
+        return recipeService.streamRecipesFromAI(ingredients)
+                .map(markdown -> ServerSentEvent.builder(markdown).build())
+                .concatWithValues(ServerSentEvent.<String>builder().event("done").data("").build())
+                .onErrorResume(e -> {
+                    e.printStackTrace();
+                    return Flux.just(ServerSentEvent.<String>builder()
+                            .event("error")
+                            .data("Error generating recipes: " + e.getMessage())
+                            .build());
+                });
     }
 
     @PostMapping("/generate/save")
@@ -132,4 +193,17 @@ public class RecipeController {
         }
     }
 
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+    }
+
+    private ResponseEntity<List<Recipe>> pageResponse(RecipePage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getRecipes());
+    }
+
 }
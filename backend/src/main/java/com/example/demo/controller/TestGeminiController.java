@@ -19,6 +19,13 @@ public class TestGeminiController {
     @Value("${gemini.api.key}")
     private String apiKey;
     
+    // The shared, already connected client: the check measures the API rather than a fresh TLS handshake
+    private final WebClient geminiWebClient;
+    
+    public TestGeminiController(WebClient geminiWebClient) {
+        this.geminiWebClient = geminiWebClient;
+    }
+    
     @GetMapping("/gemini")
     public ResponseEntity<Map<String, Object>> testGeminiConnection() {
         try {
@@ -43,12 +50,7 @@ public class TestGeminiController {
             System.out.println("API Key (first 10 chars): " + apiKey.substring(0, Math.min(10, apiKey.length())));
             System.out.println("Full URL: " + uri.toString().replace(apiKey, "***HIDDEN***"));
             
-            WebClient webClient = WebClient.builder()
-                    .baseUrl("https://generativelanguage.googleapis.com")
-                    .defaultHeader("Content-Type", "application/json")
-                    .build();
-
-            ResponseEntity<Map<String, Object>> response = webClient.post()
+            ResponseEntity<Map<String, Object>> response = geminiWebClient.post()
                     .uri(uri)
                     .bodyValue(requestBody)
                     .retrieve()
@@ -0,0 +1,96 @@
+package com.example.demo.image;
+
+/**
+ * Reads the EXIF orientation tag from a JPEG, which phone cameras set instead of rotating
+ * the pixels. ImageIO ignores it, so without this a receipt shot in portrait is decoded
+ * sideways.
+ *
+ * Walks the JPEG marker segments up to the image data, finds the APP1 "Exif" segment and
+ * reads tag 0x0112 from its first IFD. Anything unexpected yields 1 (as stored).
+ */
+final class ExifOrientation {
+
+    static final int NORMAL = 1;
+
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private ExifOrientation() {
+    }
+
+    /** Returns the orientation, 1 to 8, or 1 if the image has none or is not a JPEG. */
+    static int read(byte[] jpeg) {
+        if (jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+            return NORMAL;
+        }
+        int pos = 2;
+        while (pos + 4 <= jpeg.length) {
+            if ((jpeg[pos] & 0xFF) != 0xFF) {
+                return NORMAL;
+            }
+            int marker = jpeg[pos + 1] & 0xFF;
+            // Start of scan: no metadata after this point
+            if (marker == 0xDA) {
+                return NORMAL;
+            }
+            int length = u16(jpeg, pos + 2, false);
+            int payload = pos + 4;
+            if (length < 2 || payload + length - 2 > jpeg.length) {
+                return NORMAL;
+            }
+            if (marker == 0xE1 && isExifHeader(jpeg, payload, length - 2)) {
+                return readTiff(jpeg, payload + 6, payload + length - 2);
+            }
+            pos += 2 + length;
+        }
+        return NORMAL;
+    }
+
+    private static boolean isExifHeader(byte[] b, int at, int length) {
+        return length >= 6 && b[at] == 'E' && b[at + 1] == 'x' && b[at + 2] == 'i' && b[at + 3] == 'f'
+                && b[at + 4] == 0 && b[at + 5] == 0;
+    }
+
+    // Offsets in the TIFF structure are relative to its start
+    private static int readTiff(byte[] b, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return NORMAL;
+        }
+        boolean littleEndian;
+        if (b[tiff] == 'I' && b[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (b[tiff] == 'M' && b[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return NORMAL;
+        }
+        long ifd = tiff + u32(b, tiff + 4, littleEndian);
+        if (ifd + 2 > end) {
+            return NORMAL;
+        }
+        int entries = u16(b, (int) ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                return NORMAL;
+            }
+            if (u16(b, entry, littleEndian) == ORIENTATION_TAG) {
+                // SHORT value, stored in the first two bytes of the value field
+                int orientation = u16(b, entry + 8, littleEndian);
+                return orientation >= 1 && orientation <= 8 ? orientation : NORMAL;
+            }
+        }
+        return NORMAL;
+    }
+
+    private static int u16(byte[] b, int at, boolean littleEndian) {
+        int hi = b[littleEndian ? at + 1 : at] & 0xFF;
+        int lo = b[littleEndian ? at : at + 1] & 0xFF;
+        return hi << 8 | lo;
+    }
+
+    private static long u32(byte[] b, int at, boolean littleEndian) {
+        long first = u16(b, littleEndian ? at + 2 : at, littleEndian);
+        long second = u16(b, littleEndian ? at : at + 2, littleEndian);
+        return first << 16 | second;
+    }
+}
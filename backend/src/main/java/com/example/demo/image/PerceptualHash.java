@@ -0,0 +1,35 @@
+package com.example.demo.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 64-bit difference hash (dHash) of an image: shrunk to 9x8 grayscale, each bit says
+ * whether a pixel is brighter than its right-hand neighbour.
+ *
+ * Two photos of the same receipt differ in exposure, framing and JPEG noise, which changes
+ * every byte but few of these bits, so near-identical images are those whose hashes differ
+ * in only a few bits.
+ */
+public final class PerceptualHash {
+
+    private PerceptualHash() {
+    }
+
+    /** Hashes a grayscale image. */
+    static long of(BufferedImage gray) {
+        long hash = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                int left = gray.getRaster().getSample(x, y, 0);
+                int right = gray.getRaster().getSample(x + 1, y, 0);
+                hash = hash << 1 | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /** Number of differing bits; 0 for identical hashes, 64 at most. */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
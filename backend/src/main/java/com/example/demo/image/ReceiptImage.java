@@ -0,0 +1,12 @@
+package com.example.demo.image;
+
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * Image to send to the model: either the upload itself or a re-encoded copy. Read through
+ * {@link #source()} so an upload Spring has spooled to disk is never loaded whole.
+ * {@code perceptualHash} is the image's {@link PerceptualHash}, or null if it couldn't be
+ * decoded.
+ */
+public record ReceiptImage(InputStreamSource source, long size, String mimeType, Long perceptualHash) {
+}
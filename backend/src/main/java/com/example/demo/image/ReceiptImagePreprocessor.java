@@ -0,0 +1,287 @@
+package com.example.demo.image;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Shrinks receipt photos before they are sent to Gemini.
+ *
+ * A phone photo is several megabytes of color at a resolution far beyond what the model
+ * needs to read a receipt. The image is decoded, turned upright according to its EXIF
+ * orientation, converted to grayscale, scaled down so its longer side is at most
+ * {@code receipts.image.max-dimension} pixels and re-encoded as JPEG. The decoder itself
+ * subsamples to about twice that size, so a 48 megapixel photo never exists in memory at
+ * full resolution; the remaining reduction is done in halving steps, since a single
+ * bilinear pass skips pixels and blurs small print.
+ *
+ * Uses only javax.imageio. Formats it can't decode (HEIC, CMYK JPEG), oversized images,
+ * and images that would not get smaller are passed through unchanged. Byte counts before
+ * and after are published as the receipt.image.bytes distribution. Decoded images also
+ * get a {@link PerceptualHash} for recognizing recaptures of the same receipt.
+ *
+ * Each decode holds tens of megabytes of pixels and a core, and the blocking scheduler
+ * does not bound them when it runs on virtual threads, so at most
+ * {@code receipts.image.max-concurrent} images are processed at once. Further uploads
+ * wait for a permit.
+ */
+@Component
+public class ReceiptImagePreprocessor {
+
+    // Decoding allocates width * height pixels (after subsampling) up front; beyond this the upload is refused as-is
+    private static final long MAX_PIXELS = 60_000_000L;
+    // EXIF is one APP1 segment (at most 64KB) near the start of a JPEG, after at most a JFIF header
+    private static final int EXIF_WINDOW = 128 * 1024;
+
+    private final boolean enabled;
+    private final int maxDimension;
+    private final float jpegQuality;
+    private final Semaphore permits;
+
+    private final DistributionSummary originalBytes;
+    private final DistributionSummary sentBytes;
+    private final Timer preprocessTime;
+
+    public ReceiptImagePreprocessor(@Value("${receipts.image.preprocess.enabled:true}") boolean enabled,
+                                    @Value("${receipts.image.max-dimension:1600}") int maxDimension,
+                                    @Value("${receipts.image.jpeg-quality:0.8}") float jpegQuality,
+                                    @Value("${receipts.image.max-concurrent:0}") int maxConcurrent,
+                                    MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxDimension = Math.max(1, maxDimension);
+        this.jpegQuality = Math.min(1f, Math.max(0.1f, jpegQuality));
+        this.permits = new Semaphore(maxConcurrent > 0 ? maxConcurrent : Runtime.getRuntime().availableProcessors());
+        this.originalBytes = DistributionSummary.builder("receipt.image.bytes")
+                .description("Size of receipt images as uploaded and as sent to the model")
+                .baseUnit("bytes")
+                .tag("stage", "uploaded")
+                .register(meterRegistry);
+        this.sentBytes = DistributionSummary.builder("receipt.image.bytes")
+                .description("Size of receipt images as uploaded and as sent to the model")
+                .baseUnit("bytes")
+                .tag("stage", "sent")
+                .register(meterRegistry);
+        this.preprocessTime = Timer.builder("receipt.image.preprocess")
+                .description("Time spent decoding, shrinking and re-encoding receipt images")
+                .register(meterRegistry);
+    }
+
+    /** Returns the image to send in place of the upload, which may be the upload itself. */
+    public ReceiptImage prepare(MultipartFile upload) {
+        originalBytes.record(upload.getSize());
+        ReceiptImage prepared = enabled ? preprocessTime.record(() -> shrinkWithPermit(upload)) : null;
+        if (prepared == null) {
+            prepared = new ReceiptImage(upload, upload.getSize(), upload.getContentType(), null);
+        }
+        sentBytes.record(prepared.size());
+        return prepared;
+    }
+
+    // Blocks for a permit; an interrupted wait sends the upload unchanged
+    private ReceiptImage shrinkWithPermit(MultipartFile upload) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            return shrink(upload);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Null means the upload couldn't be decoded and is sent unchanged
+    private ReceiptImage shrink(MultipartFile upload) {
+        try {
+            BufferedImage source = decode(upload);
+            if (source == null) {
+                return null;
+            }
+            int orientation = readOrientation(upload);
+            boolean swapsSides = orientation >= 5;
+            int width = swapsSides ? source.getHeight() : source.getWidth();
+            int height = swapsSides ? source.getWidth() : source.getHeight();
+            double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+            int targetWidth = Math.max(1, (int) Math.round(width * scale));
+            int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+            // First pass turns it upright and gray, and at most halves it
+            BufferedImage image = scale < 0.5
+                    ? draw(source, orientation, (width + 1) / 2, (height + 1) / 2)
+                    : draw(source, orientation, targetWidth, targetHeight);
+            image = downscale(image, targetWidth, targetHeight);
+
+            // Hashed after orientation, so a recapture with the phone held differently still matches
+            long perceptualHash = PerceptualHash.of(downscale(image, 9, 8));
+            byte[] jpeg = encodeJpeg(image);
+            if (jpeg.length >= upload.getSize()) {
+                return new ReceiptImage(upload, upload.getSize(), upload.getContentType(), perceptualHash);
+            }
+            System.out.println("Receipt image " + source.getWidth() + "x" + source.getHeight() + " (" + upload.getSize()
+                    + " bytes) -> " + targetWidth + "x" + targetHeight + " gray (" + jpeg.length + " bytes)");
+            return new ReceiptImage(new ByteArrayResource(jpeg), jpeg.length, "image/jpeg", perceptualHash);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Receipt image preprocessing failed, sending it unchanged: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static int readOrientation(MultipartFile upload) throws IOException {
+        try (InputStream in = upload.getInputStream()) {
+            return ExifOrientation.read(in.readNBytes(EXIF_WINDOW));
+        }
+    }
+
+    /**
+     * Decodes straight from the upload's stream rather than a copy of it in memory. Rows and
+     * columns are skipped while decoding so the longer side comes out at no less than twice
+     * the target: enough for the halving steps to average, at a fraction of the pixels.
+     */
+    private BufferedImage decode(MultipartFile upload) throws IOException {
+        try (InputStream in = upload.getInputStream();
+             ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int step = Math.max(1, Math.max(width, height) / (2 * maxDimension));
+                if ((long) ceilDiv(width, step) * ceilDiv(height, step) > MAX_PIXELS) {
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    // Halves each side until the next step reaches the target, then lands on it exactly
+    private static BufferedImage downscale(BufferedImage image, int width, int height) {
+        while (image.getWidth() > width || image.getHeight() > height) {
+            int nextWidth = Math.max(width, (image.getWidth() + 1) / 2);
+            int nextHeight = Math.max(height, (image.getHeight() + 1) / 2);
+            image = draw(image, ExifOrientation.NORMAL, nextWidth, nextHeight);
+        }
+        // Only for images already smaller than the target on some side
+        if (image.getWidth() != width || image.getHeight() != height) {
+            image = draw(image, ExifOrientation.NORMAL, width, height);
+        }
+        return image;
+    }
+
+    // Renders the image upright, in grayscale, at exactly width x height
+    private static BufferedImage draw(BufferedImage source, int orientation, int width, int height) {
+        boolean swapsSides = orientation >= 5;
+        double sourceWidth = swapsSides ? source.getHeight() : source.getWidth();
+        double sourceHeight = swapsSides ? source.getWidth() : source.getHeight();
+        AffineTransform transform = AffineTransform.getScaleInstance(width / sourceWidth, height / sourceHeight);
+        transform.concatenate(orientationTransform(orientation, source.getWidth(), source.getHeight()));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = target.createGraphics();
+        try {
+            // Transparent areas would otherwise turn black and hide dark print
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    // Maps stored pixels to upright ones for EXIF orientations 1-8
+    private static AffineTransform orientationTransform(int orientation, int width, int height) {
+        AffineTransform t = new AffineTransform();
+        switch (orientation) {
+            case 2 -> {
+                t.scale(-1, 1);
+                t.translate(-width, 0);
+            }
+            case 3 -> {
+                t.translate(width, height);
+                t.rotate(Math.PI);
+            }
+            case 4 -> {
+                t.scale(1, -1);
+                t.translate(0, -height);
+            }
+            case 5 -> {
+                t.rotate(-Math.PI / 2);
+                t.scale(-1, 1);
+            }
+            case 6 -> {
+                t.translate(height, 0);
+                t.rotate(Math.PI / 2);
+            }
+            case 7 -> {
+                t.scale(-1, 1);
+                t.translate(-height, width);
+                t.rotate(3 * Math.PI / 2);
+            }
+            case 8 -> {
+                t.translate(0, width);
+                t.rotate(3 * Math.PI / 2);
+            }
+            default -> {
+            }
+        }
+        return t;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.demo.limit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Caps how many calls to an upstream run at once, with a limit that follows how the
+ * upstream is coping (AIMD, as in TCP congestion control).
+ *
+ * Every call that finishes within the latency target while the limit is actually in use
+ * raises the limit by 1/limit, so about one per round of calls. A slow call lowers it by
+ * 10%; a 429 or 503 from the upstream, or a read timeout, halves it. Calls over the limit
+ * wait in a bounded FIFO queue for at most the queue timeout; past either bound they fail
+ * right away with {@link BulkheadFullException} instead of adding to the overload.
+ *
+ * Published by {@link #bindTo} with a pool tag: gemini.bulkhead.limit, .active,
+ * .queue.depth and .rejected (by reason).
+ */
+public class AdaptiveBulkhead {
+
+    private static final double SLOW_BACKOFF = 0.9;
+    private static final double OVERLOAD_BACKOFF = 0.5;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final Duration queueTimeout;
+    private final long latencyTargetNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    private double limit;
+    private int active;
+
+    private final AtomicLong queueFull = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public AdaptiveBulkhead(String name, int initialLimit, int minLimit, int maxLimit, int maxQueue,
+                            Duration queueTimeout, Duration latencyTarget) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.queueTimeout = queueTimeout;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /** Publishes the bulkhead's meters. Called once it is constructed, so they never see it half-built. */
+    public void bindTo(MeterRegistry meterRegistry) {
+        Gauge.builder("gemini.bulkhead.limit", this, AdaptiveBulkhead::limit)
+                .description("Concurrent upstream calls currently allowed")
+                .tag("pool", name)
+                .register(meterRegistry);
+        Gauge.builder("gemini.bulkhead.active", this, AdaptiveBulkhead::active)
+                .description("Upstream calls running")
+                .tag("pool", name)
+                .register(meterRegistry);
+        Gauge.builder("gemini.bulkhead.queue.depth", this, AdaptiveBulkhead::queueDepth)
+                .description("Calls waiting for a slot")
+                .tag("pool", name)
+                .register(meterRegistry);
+        bindRejected(meterRegistry, "queue-full", queueFull);
+        bindRejected(meterRegistry, "timeout", timedOut);
+    }
+
+    private void bindRejected(MeterRegistry meterRegistry, String reason, AtomicLong count) {
+        FunctionCounter.builder("gemini.bulkhead.rejected", count, AtomicLong::get)
+                .description("Calls turned away without reaching the upstream")
+                .tag("pool", name)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /** Runs the call once a slot is free; its outcome and latency adjust the limit. */
+    public <T> Mono<T> run(Supplier<Mono<T>> call) {
+        return Mono.usingWhen(acquire(),
+                permit -> call.get()
+                        .doOnSuccess(value -> permit.succeeded())
+                        .doOnError(permit::failed),
+                Permit::release,
+                (permit, error) -> permit.release(),
+                Permit::release);
+    }
+
+    /**
+     * Runs a streamed call once a slot is free, holding the slot until the stream ends. The
+     * time to the first element is what counts as its latency.
+     */
+    public <T> Flux<T> stream(Supplier<Flux<T>> call) {
+        return Flux.usingWhen(acquire(),
+                permit -> call.get()
+                        .doOnNext(value -> permit.succeeded())
+                        .doOnComplete(permit::succeeded)
+                        .doOnError(permit::failed),
+                Permit::release,
+                (permit, error) -> permit.release(),
+                Permit::release);
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            lock.lock();
+            try {
+                if (active < (int) limit && queue.isEmpty()) {
+                    active++;
+                    waiter.granted = true;
+                } else if (queue.size() >= maxQueue) {
+                    waiter = null;
+                } else {
+                    queue.addLast(waiter);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (waiter == null) {
+                queueFull.incrementAndGet();
+                sink.error(new BulkheadFullException("Too many " + name + " requests waiting for Gemini", queueTimeout));
+                return;
+            }
+            if (waiter.granted) {
+                sink.success(new Permit());
+                return;
+            }
+            Waiter queued = waiter;
+            queued.expiry = Schedulers.parallel().schedule(() -> expire(queued), queueTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            sink.onCancel(() -> cancel(queued));
+        });
+    }
+
+    private void expire(Waiter waiter) {
+        boolean removed;
+        lock.lock();
+        try {
+            removed = queue.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+        if (removed) {
+            timedOut.incrementAndGet();
+            waiter.sink.error(new BulkheadFullException("Timed out waiting for a " + name + " slot after " + queueTimeout, queueTimeout));
+        }
+    }
+
+    private void cancel(Waiter waiter) {
+        boolean granted;
+        lock.lock();
+        try {
+            granted = !queue.remove(waiter) && waiter.granted;
+        } finally {
+            lock.unlock();
+        }
+        if (waiter.expiry != null) {
+            waiter.expiry.dispose();
+        }
+        // Granted just as the caller went away: the permit will never be delivered, so free it here
+        if (granted) {
+            releaseSlot();
+        }
+    }
+
+    // Hands freed slots to the oldest waiters; sinks are completed outside the lock
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            active--;
+        } finally {
+            lock.unlock();
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            Waiter next;
+            lock.lock();
+            try {
+                if (queue.isEmpty() || active >= (int) limit) {
+                    return;
+                }
+                next = queue.pollFirst();
+                active++;
+                next.granted = true;
+            } finally {
+                lock.unlock();
+            }
+            if (next.expiry != null) {
+                next.expiry.dispose();
+            }
+            next.sink.success(new Permit());
+        }
+    }
+
+    private void onSuccess(long latencyNanos) {
+        lock.lock();
+        try {
+            if (latencyNanos > latencyTargetNanos) {
+                limit = Math.max(minLimit, limit * SLOW_BACKOFF);
+            } else if (active >= limit / 2) {
+                // Growing while the limit isn't the bottleneck would only allow a bigger burst later
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        } finally {
+            lock.unlock();
+        }
+        drain();
+    }
+
+    private void onOverload() {
+        lock.lock();
+        try {
+            limit = Math.max(minLimit, limit * OVERLOAD_BACKOFF);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isOverload(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status == 503;
+        }
+        // Read timeouts from the HTTP client arrive wrapped in a WebClientRequestException
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof io.netty.handler.timeout.TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public double limit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int active() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+        final MonoSink<Permit> sink;
+        // Guarded by the bulkhead's lock
+        boolean granted;
+        Disposable expiry;
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    // One running call's slot; the first outcome adjusts the limit, the slot is freed once
+    private final class Permit {
+        private final long startedAt = System.nanoTime();
+        private final AtomicBoolean measured = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void succeeded() {
+            if (measured.compareAndSet(false, true)) {
+                onSuccess(System.nanoTime() - startedAt);
+            }
+        }
+
+        void failed(Throwable error) {
+            if (measured.compareAndSet(false, true) && isOverload(error)) {
+                onOverload();
+            }
+        }
+
+        Mono<Void> release() {
+            return Mono.fromRunnable(() -> {
+                if (released.compareAndSet(false, true)) {
+                    releaseSlot();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.demo.limit;
+
+import java.time.Duration;
+
+/** A call turned away by an {@link AdaptiveBulkhead}: its queue was full, or it waited too long. */
+public class BulkheadFullException extends UpstreamRejectedException {
+
+    public BulkheadFullException(String message, Duration retryAfter) {
+        super(message, retryAfter);
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.demo.limit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Stops calling an upstream that is failing or too slow, so callers get an immediate
+ * {@link CircuitOpenException} (and can fall back) instead of each waiting out a timeout.
+ *
+ * Closed, it records the outcome of the last {@code windowSize} calls; a call counts as
+ * bad if it fails with a server error, 429 or network error, or takes longer than the slow
+ * call threshold. Once at least {@code minimumCalls} are recorded and the bad share reaches
+ * the failure rate threshold, it opens and refuses every call for the open duration. Then
+ * it lets {@code halfOpenCalls} trial calls through: if all are good it closes again,
+ * otherwise it reopens. Client errors (4xx other than 429) and calls turned away by a
+ * bulkhead say nothing about the upstream's health and are not recorded.
+ *
+ * Published by {@link #bindTo} as gemini.circuit.state (0 closed, 1 open, 2 half-open)
+ * and gemini.circuit.rejected, tagged with the breaker's name.
+ */
+public class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final Duration openDuration;
+    private final int halfOpenCalls;
+    // System.nanoTime outside tests
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Ring of the last outcomes while closed; true = bad
+    private final boolean[] outcomes;
+    private int next;
+    private int recorded;
+    private int bad;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          Duration slowCallThreshold, Duration openDuration, int halfOpenCalls) {
+        this(name, windowSize, minimumCalls, failureRateThreshold, slowCallThreshold, openDuration, halfOpenCalls,
+                System::nanoTime);
+    }
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                   Duration slowCallThreshold, Duration openDuration, int halfOpenCalls, LongSupplier nanoClock) {
+        this.name = name;
+        this.outcomes = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.min(outcomes.length, Math.max(1, minimumCalls));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        this.openDuration = openDuration;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.nanoClock = nanoClock;
+    }
+
+    /** Publishes the state gauge and rejection count; kept out of the constructor so the gauge never reads a half-built breaker. */
+    public void bindTo(MeterRegistry meterRegistry) {
+        Gauge.builder("gemini.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("Circuit state: 0 closed, 1 open, 2 half-open")
+                .tag("name", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("gemini.circuit.rejected", rejected, AtomicLong::get)
+                .description("Calls refused without reaching the upstream because the circuit was open")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /** Runs the call unless the circuit is open, and records how it went. */
+    public <T> Mono<T> run(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            Attempt attempt = tryAcquire();
+            if (attempt == null) {
+                return Mono.error(refusal());
+            }
+            return call.get()
+                    .doOnSuccess(value -> attempt.succeeded())
+                    .doOnError(attempt::failed)
+                    .doOnCancel(attempt::abandoned);
+        });
+    }
+
+    /** Runs a streamed call unless the circuit is open; the time to the first element counts as its latency. */
+    public <T> Flux<T> stream(Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            Attempt attempt = tryAcquire();
+            if (attempt == null) {
+                return Flux.error(refusal());
+            }
+            return call.get()
+                    .doOnNext(value -> attempt.succeeded())
+                    .doOnComplete(attempt::succeeded)
+                    .doOnError(attempt::failed)
+                    .doOnCancel(attempt::abandoned);
+        });
+    }
+
+    private CircuitOpenException refusal() {
+        rejected.incrementAndGet();
+        return new CircuitOpenException("Circuit " + name + " is open; not calling the upstream", retryAfter());
+    }
+
+    // Until the open period ends, or a moment while the half-open trials are running
+    private Duration retryAfter() {
+        lock.lock();
+        try {
+            if (state != State.OPEN) {
+                return Duration.ofSeconds(1);
+            }
+            return openDuration.minusNanos(nanoClock.getAsLong() - openedAt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Null when the call is refused
+    private Attempt tryAcquire() {
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (nanoClock.getAsLong() - openedAt < openDuration.toNanos()) {
+                    return null;
+                }
+                state = State.HALF_OPEN;
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsStarted >= halfOpenCalls) {
+                    return null;
+                }
+                trialsStarted++;
+                return new Attempt(true);
+            }
+            return new Attempt(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean trial, boolean isBad) {
+        lock.lock();
+        try {
+            if (trial) {
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                if (isBad) {
+                    open();
+                } else if (++trialsSucceeded >= halfOpenCalls) {
+                    close();
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                // Started before the circuit opened; its outcome is about the past
+                return;
+            }
+            if (recorded == outcomes.length) {
+                if (outcomes[next]) {
+                    bad--;
+                }
+            } else {
+                recorded++;
+            }
+            outcomes[next] = isBad;
+            if (isBad) {
+                bad++;
+            }
+            next = (next + 1) % outcomes.length;
+            if (recorded >= minimumCalls && (double) bad / recorded >= failureRateThreshold) {
+                open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A trial that never finished must not leave the half-open state waiting for it forever
+    private void release(boolean trial) {
+        lock.lock();
+        try {
+            if (trial && state == State.HALF_OPEN) {
+                trialsStarted--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+        System.err.println("Circuit " + name + " opened for " + openDuration);
+    }
+
+    // Called with the lock held
+    private void close() {
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        bad = 0;
+        System.out.println("Circuit " + name + " closed");
+    }
+
+    State state() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether the failure says the upstream is unhealthy rather than that the request was bad
+    private static boolean isUpstreamFailure(Throwable error) {
+        if (error instanceof BulkheadFullException) {
+            return false;
+        }
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return true;
+    }
+
+    private final class Attempt {
+        private final boolean trial;
+        private final long startedAt = nanoClock.getAsLong();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Attempt(boolean trial) {
+            this.trial = trial;
+        }
+
+        void succeeded() {
+            if (done.compareAndSet(false, true)) {
+                record(trial, nanoClock.getAsLong() - startedAt > slowCallNanos);
+            }
+        }
+
+        void failed(Throwable error) {
+            if (done.compareAndSet(false, true)) {
+                if (isUpstreamFailure(error)) {
+                    record(trial, true);
+                } else {
+                    release(trial);
+                }
+            }
+        }
+
+        void abandoned() {
+            if (done.compareAndSet(false, true)) {
+                release(trial);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.demo.limit;
+
+import java.time.Duration;
+
+/** A call refused without being attempted because its {@link CircuitBreaker} is open. */
+public class CircuitOpenException extends UpstreamRejectedException {
+
+    public CircuitOpenException(String message, Duration retryAfter) {
+        super(message, retryAfter);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.demo.limit;
+
+import java.time.Duration;
+
+/**
+ * A call turned away before it reached the upstream, by a {@link CircuitBreaker} or an
+ * {@link AdaptiveBulkhead}. Nothing was attempted, so the caller can fall back or ask the
+ * client to come back after {@link #getRetryAfter()}.
+ */
+public class UpstreamRejectedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public UpstreamRejectedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /** Whole seconds for a Retry-After header, at least one. */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.demo.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "canonical_ingredients")
+public class CanonicalIngredient {
+    
+    // Dense integer id, allocated from the "counters" collection
+    @Id
+    private Integer id;
+    
+    // Output of IngredientCanonicalizer, unique
+    @Field("name")
+    private String name;
+}
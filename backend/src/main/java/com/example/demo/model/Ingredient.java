@@ -21,6 +21,10 @@ public class Ingredient {
     @Field("name")
     private String name;
     
+    // Canonical form of the name (see IngredientCanonicalizer), unique across ingredients
+    @Field("normalized_name")
+    private String normalizedName;
+    
     @Field("category")
     private String category;
     
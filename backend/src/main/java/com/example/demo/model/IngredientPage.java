@@ -0,0 +1,18 @@
+package com.example.demo.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngredientPage {
+    
+    private List<Ingredient> ingredients;
+    
+    // Opaque cursor for the next page, null when this is the last page
+    private String nextCursor;
+}
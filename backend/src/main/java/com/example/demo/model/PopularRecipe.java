@@ -0,0 +1,27 @@
+package com.example.demo.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "popular_recipes")
+public class PopularRecipe {
+    
+    // Same id as the recipe
+    @Id
+    private String id;
+    
+    // Confidence-adjusted rating the leaderboard is ranked by
+    @Field("score")
+    private Double score;
+    
+    // Catalog-wide mean rating the score was shrunk towards
+    @Field("prior_mean")
+    private Double priorMean;
+}
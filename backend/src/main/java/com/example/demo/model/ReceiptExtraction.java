@@ -0,0 +1,34 @@
+package com.example.demo.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "receipt_extractions")
+public class ReceiptExtraction {
+    
+    // Model name and hex SHA-256 of the uploaded image bytes
+    @Id
+    private String id;
+    
+    // dHash of the decoded image, for matching recaptures; null if it couldn't be decoded
+    @Field("perceptual_hash")
+    private Long perceptualHash;
+    
+    // Ingredient names Gemini extracted from the image
+    @Field("ingredients")
+    private List<String> ingredients;
+    
+    // Expired by a TTL index
+    @Field("created_at")
+    private LocalDateTime createdAt;
+}
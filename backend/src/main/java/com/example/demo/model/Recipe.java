@@ -40,6 +40,10 @@ public class Recipe {
     @Field("ingredients")
     private List<String> ingredients;
     
+    // Canonical ingredient id for each entry of ingredients (null where nothing canonical remains)
+    @Field("ingredient_ids")
+    private List<Integer> ingredientIds;
+    
     @Field("instructions")
     private List<String> instructions;
     
@@ -0,0 +1,31 @@
+package com.example.demo.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecipeFilterRequest {
+    
+    // Numeric filters only reject recipes that have the value set,
+    // recipes without nutrition or time info always pass
+    private Double maxCalories;
+    
+    private Double minProtein;
+    
+    // Matched exactly (lower-cased) against the recipe tags
+    private String dietType;
+    
+    private Integer maxPrepTime;
+    
+    private Integer maxCookTime;
+    
+    // One of: calories, protein, prepTime, cookTime, rating (unsorted when null)
+    private String sortBy;
+    
+    private Boolean descending = false;
+    
+    private Integer limit;
+}
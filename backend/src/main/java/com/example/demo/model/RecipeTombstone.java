@@ -0,0 +1,25 @@
+package com.example.demo.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "recipe_tombstones")
+public class RecipeTombstone {
+    
+    // Id of the deleted recipe
+    @Id
+    private String id;
+    
+    // Read by the search index catch-up; expired by a TTL index
+    @Field("deleted_at")
+    private LocalDateTime deletedAt;
+}
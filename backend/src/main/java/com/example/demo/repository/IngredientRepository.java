@@ -1,19 +1,25 @@
 package com.example.demo.repository;
 
 import com.example.demo.model.Ingredient;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface IngredientRepository extends MongoRepository<Ingredient, String> {
+public interface IngredientRepository extends MongoRepository<Ingredient, String>, IngredientRepositoryCustom {
     
     // Find ingredients by name (case-insensitive)
     @Query("{'name': {$regex: ?0, $options: 'i'}}")
     List<Ingredient> findByNameContaining(String name);
     
+    // Find ingredients by normalized name (unique, indexed)
+    List<Ingredient> findByNormalizedNameIn(Collection<String> normalizedNames);
+    
     // Find ingredients by category
     List<Ingredient> findByCategory(String category);
     
@@ -27,4 +33,12 @@ public interface IngredientRepository extends MongoRepository<Ingredient, String
     // Find high confidence ingredients
     @Query("{'confidence': {$gte: 0.8}}")
     List<Ingredient> findHighConfidenceIngredients();
+    
+    // Keyset pagination on _id: first page, then everything after the last id seen
+    List<Ingredient> findAllByOrderByIdAsc(Limit limit);
+    
+    List<Ingredient> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+    
+    // Reads the whole collection through a cursor; the caller must close the stream
+    Stream<Ingredient> streamAllBy();
 }
@@ -0,0 +1,12 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.Ingredient;
+
+import java.util.List;
+
+public interface IngredientRepositoryCustom {
+    
+    // Inserts all ingredients in one unordered bulk write and returns the ones that were inserted;
+    // those rejected because their normalized name already exists are left out
+    List<Ingredient> insertAllSkippingDuplicates(List<Ingredient> ingredients);
+}
@@ -0,0 +1,57 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.Ingredient;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RequiredArgsConstructor
+public class IngredientRepositoryImpl implements IngredientRepositoryCustom {
+    
+    private static final int DUPLICATE_KEY = 11000;
+    
+    private final MongoTemplate mongoTemplate;
+    
+    @Override
+    public List<Ingredient> insertAllSkippingDuplicates(List<Ingredient> ingredients) {
+        if (ingredients.isEmpty()) {
+            return List.of();
+        }
+        // Ids are assigned up front because a bulk insert does not write generated ids back
+        for (Ingredient ingredient : ingredients) {
+            if (ingredient.getId() == null) {
+                ingredient.setId(new ObjectId().toHexString());
+            }
+        }
+        
+        Set<Integer> rejected = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Ingredient.class)
+                    .insert(ingredients)
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                rejected.add(error.getIndex());
+            }
+        }
+        
+        List<Ingredient> inserted = new ArrayList<>(ingredients.size() - rejected.size());
+        for (int i = 0; i < ingredients.size(); i++) {
+            if (!rejected.contains(i)) {
+                inserted.add(ingredients.get(i));
+            }
+        }
+        return inserted;
+    }
+}
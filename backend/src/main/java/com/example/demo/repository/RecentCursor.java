@@ -0,0 +1,35 @@
+package com.example.demo.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+/**
+ * Opaque position in the recent-recipes feed (created_at descending, then _id descending):
+ * the creation time and id of the last recipe returned. A null creation time means the
+ * feed has reached the recipes that never had one, which sort last.
+ */
+public record RecentCursor(LocalDateTime createdAt, String id) {
+
+    public String encode() {
+        // Mongo keeps millisecond precision, so anything finer would not match the stored value
+        String time = createdAt != null ? createdAt.truncatedTo(ChronoUnit.MILLIS).toString() : "";
+        String raw = time + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static RecentCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            String time = raw.substring(0, separator);
+            return new RecentCursor(time.isEmpty() ? null : LocalDateTime.parse(time), raw.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package com.example.demo.repository;
 
 import com.example.demo.model.Recipe;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface RecipeRepository extends MongoRepository<Recipe, String> {
+public interface RecipeRepository extends MongoRepository<Recipe, String>, RecipeRepositoryCustom {
     
     // Find recipes by ingredients (case-insensitive)
     @Query("{'ingredients': {$regex: ?0, $options: 'i'}}")
@@ -35,11 +37,11 @@ public interface RecipeRepository extends MongoRepository<Recipe, String> {
     List<Recipe> findByMinProtein(Double minProtein);
     
     // Find recipes by maximum prep time
-    @Query("{'prepTimeMinutes': {$lte: ?0}}")
+    @Query("{'prep_time_minutes': {$lte: ?0}}")
     List<Recipe> findByMaxPrepTime(Integer maxPrepTime);
     
     // Find recipes by maximum cook time
-    @Query("{'cookTimeMinutes': {$lte: ?0}}")
+    @Query("{'cook_time_minutes': {$lte: ?0}}")
     List<Recipe> findByMaxCookTime(Integer maxCookTime);
     
     // Find saved recipes by user ID
@@ -55,6 +57,14 @@ public interface RecipeRepository extends MongoRepository<Recipe, String> {
     List<Recipe> findByTitleContaining(String title);
     
     // Complex query for filtered search
-    @Query("{'$and': [{'nutrition.calories': {$lte: ?0}}, {'nutrition.protein': {$gte: ?1}}, {'prepTimeMinutes': {$lte: ?2}}, {'cookTimeMinutes': {$lte: ?3}}]}")
+    @Query("{'$and': [{'nutrition.calories': {$lte: ?0}}, {'nutrition.protein': {$gte: ?1}}, {'prep_time_minutes': {$lte: ?2}}, {'cook_time_minutes': {$lte: ?3}}]}")
     List<Recipe> findByFilters(Double maxCalories, Double minProtein, Integer maxPrepTime, Integer maxCookTime);
+    
+    // Keyset pagination on _id: first page, then everything after the last id seen
+    List<Recipe> findAllByOrderByIdAsc(Limit limit);
+    
+    List<Recipe> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+    
+    // Reads the whole collection through a cursor; the caller must close the stream
+    Stream<Recipe> streamAllBy();
 }
@@ -0,0 +1,18 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipeFilterRequest;
+
+import java.util.List;
+
+public interface RecipeRepositoryCustom {
+    
+    // Runs all filters, the sort and the limit as a single Mongo query
+    List<Recipe> findWithFilters(RecipeFilterRequest filters, int limit);
+    
+    // Newest recipes first (created_at, then _id, both descending), starting after the cursor if given
+    List<Recipe> findRecent(RecentCursor after, int limit);
+    
+    // Deletes the recipe, leaving a tombstone so a restored search index snapshot drops it too
+    void deleteWithTombstone(String id);
+}
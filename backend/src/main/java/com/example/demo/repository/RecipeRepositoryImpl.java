@@ -0,0 +1,112 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipeFilterRequest;
+import com.example.demo.model.RecipeTombstone;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class RecipeRepositoryImpl implements RecipeRepositoryCustom {
+    
+    // Sortable request fields -> document fields
+    private static final Map<String, String> SORT_FIELDS = Map.of(
+            "calories", "nutrition.calories",
+            "protein", "nutrition.protein",
+            "prepTime", "prep_time_minutes",
+            "cookTime", "cook_time_minutes",
+            "rating", "rating"
+    );
+    
+    private final MongoTemplate mongoTemplate;
+    
+    @Override
+    public List<Recipe> findWithFilters(RecipeFilterRequest filters, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        
+        if (filters.getMaxCalories() != null) {
+            criteria.add(lteOrMissing("nutrition.calories", filters.getMaxCalories()));
+        }
+        if (filters.getMinProtein() != null) {
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("nutrition.protein").gte(filters.getMinProtein()),
+                    Criteria.where("nutrition.protein").is(null)
+            ));
+        }
+        if (filters.getDietType() != null && !filters.getDietType().isBlank()) {
+            criteria.add(Criteria.where("tags").is(filters.getDietType().toLowerCase()));
+        }
+        if (filters.getMaxPrepTime() != null) {
+            criteria.add(lteOrMissing("prep_time_minutes", filters.getMaxPrepTime()));
+        }
+        if (filters.getMaxCookTime() != null) {
+            criteria.add(lteOrMissing("cook_time_minutes", filters.getMaxCookTime()));
+        }
+        
+        Query query = new Query();
+        if (!criteria.isEmpty()) {
+            query.addCriteria(new Criteria().andOperator(criteria));
+        }
+        
+        if (filters.getSortBy() != null) {
+            String sortField = SORT_FIELDS.get(filters.getSortBy());
+            if (sortField == null) {
+                throw new IllegalArgumentException("Unknown sortBy: " + filters.getSortBy() + ", expected one of " + SORT_FIELDS.keySet());
+            }
+            Sort.Direction direction = Boolean.TRUE.equals(filters.getDescending()) ? Sort.Direction.DESC : Sort.Direction.ASC;
+            query.with(Sort.by(direction, sortField).and(Sort.by(Sort.Direction.ASC, "_id")));
+        }
+        query.limit(limit);
+        
+        return mongoTemplate.find(query, Recipe.class);
+    }
+    
+    @Override
+    public void deleteWithTombstone(String id) {
+        // Tombstone first: if the delete then fails, catch-up just re-reads a recipe that still exists
+        mongoTemplate.save(new RecipeTombstone(id, LocalDateTime.now()));
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(id)), Recipe.class);
+    }
+    
+    @Override
+    public List<Recipe> findRecent(RecentCursor after, int limit) {
+        Query query = new Query();
+        if (after != null) {
+            Criteria sameTimeEarlierId = Criteria.where("_id").lt(after.id());
+            if (after.createdAt() == null) {
+                // Already into the recipes without a creation time, which sort last
+                query.addCriteria(new Criteria().andOperator(
+                        Criteria.where("created_at").is(null),
+                        sameTimeEarlierId
+                ));
+            } else {
+                query.addCriteria(new Criteria().orOperator(
+                        Criteria.where("created_at").lt(after.createdAt()),
+                        new Criteria().andOperator(Criteria.where("created_at").is(after.createdAt()), sameTimeEarlierId),
+                        Criteria.where("created_at").is(null)
+                ));
+            }
+        }
+        // Served by the created_at_id index, so only limit documents are read
+        query.with(Sort.by(Sort.Direction.DESC, "created_at").and(Sort.by(Sort.Direction.DESC, "_id")));
+        query.limit(limit);
+        
+        return mongoTemplate.find(query, Recipe.class);
+    }
+    
+    // Matches documents where the field is at most the value, or not set at all
+    private static Criteria lteOrMissing(String field, Object value) {
+        return new Criteria().orOperator(
+                Criteria.where(field).lte(value),
+                Criteria.where(field).is(null)
+        );
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.demo.search;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Burkhard-Keller tree of strings under Damerau-Levenshtein distance, for finding the
+ * closest known term to a misspelled one without comparing against every term.
+ *
+ * Each child edge is labelled with its distance to the parent, and the triangle
+ * inequality lets a search within distance d skip every subtree whose label is more than
+ * d away from the query's distance to the parent. The unrestricted Damerau-Levenshtein
+ * distance is used rather than the cheaper optimal-string-alignment variant, because the
+ * latter is not a metric and the pruning would then miss matches.
+ *
+ * Removal only marks the node, since its subtree hangs off it; the owner rebuilds the tree
+ * to reclaim removed terms. Not thread-safe.
+ */
+final class BkTree {
+
+    private static final class Node {
+        final String term;
+        boolean removed;
+        Map<Integer, Node> children;
+
+        Node(String term) {
+            this.term = term;
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    /** Adds the term, or revives it if it was removed. Returns false if it was already present. */
+    boolean add(String term) {
+        if (root == null) {
+            root = new Node(term);
+            size++;
+            return true;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(term, node.term);
+            if (distance == 0) {
+                if (!node.removed) {
+                    return false;
+                }
+                node.removed = false;
+                size++;
+                return true;
+            }
+            if (node.children == null) {
+                node.children = new HashMap<>(4);
+            }
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node(term));
+                size++;
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    boolean remove(String term) {
+        Node node = root;
+        while (node != null) {
+            int distance = distance(term, node.term);
+            if (distance == 0) {
+                if (node.removed) {
+                    return false;
+                }
+                node.removed = true;
+                size--;
+                return true;
+            }
+            node = node.children != null ? node.children.get(distance) : null;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the closest term within {@code maxDistance} of the query, or null if there is
+     * none. Ties go to the alphabetically first term, so the answer doesn't depend on
+     * insertion order.
+     */
+    String nearest(String query, int maxDistance) {
+        if (root == null || maxDistance < 0) {
+            return null;
+        }
+        String best = null;
+        int bestDistance = maxDistance + 1;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(query, node.term);
+            if (!node.removed && (distance < bestDistance || distance == bestDistance && best != null && node.term.compareTo(best) < 0)) {
+                best = node.term;
+                bestDistance = distance;
+            }
+            if (node.children == null) {
+                continue;
+            }
+            // Narrows as closer matches are found
+            int radius = Math.min(maxDistance, bestDistance);
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - distance) <= radius) {
+                    pending.push(child.getValue());
+                }
+            }
+        }
+        return best;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Damerau-Levenshtein distance: the fewest insertions, deletions, substitutions and
+     * transpositions of adjacent characters turning one string into the other, where
+     * transposed characters may still be edited around (Lowrance-Wagner).
+     */
+    static int distance(String a, String b) {
+        if (a.equals(b)) {
+            return 0;
+        }
+        int n = a.length();
+        int m = b.length();
+        int infinity = n + m;
+        // d[i + 1][j + 1] is the distance between the first i chars of a and the first j of b,
+        // with a sentinel row and column of "infinity" around it
+        int[][] d = new int[n + 2][m + 2];
+        d[0][0] = infinity;
+        for (int i = 0; i <= n; i++) {
+            d[i + 1][0] = infinity;
+            d[i + 1][1] = i;
+        }
+        for (int j = 0; j <= m; j++) {
+            d[0][j + 1] = infinity;
+            d[1][j + 1] = j;
+        }
+
+        // Last row of a in which each character was seen
+        Map<Character, Integer> lastRow = new HashMap<>();
+        for (int i = 1; i <= n; i++) {
+            char ca = a.charAt(i - 1);
+            // Last column of b in this row that matched ca
+            int lastMatchColumn = 0;
+            for (int j = 1; j <= m; j++) {
+                char cb = b.charAt(j - 1);
+                int k = lastRow.getOrDefault(cb, 0);
+                int l = lastMatchColumn;
+                int cost = 1;
+                if (ca == cb) {
+                    cost = 0;
+                    lastMatchColumn = j;
+                }
+                d[i + 1][j + 1] = Math.min(
+                        Math.min(d[i][j] + cost, d[i + 1][j] + 1),
+                        Math.min(d[i][j + 1] + 1, d[k][l] + (i - k - 1) + 1 + (j - l - 1)));
+            }
+            lastRow.put(ca, i);
+        }
+        return d[n + 1][m + 1];
+    }
+}
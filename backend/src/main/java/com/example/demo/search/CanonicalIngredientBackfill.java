@@ -0,0 +1,157 @@
+package com.example.demo.search;
+
+import com.example.demo.config.MongoIndexInitializer;
+import com.example.demo.config.StartupTasks;
+import com.example.demo.model.Ingredient;
+import com.example.demo.model.Recipe;
+import com.mongodb.bulk.BulkWriteError;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Fills in ingredient_ids on recipes and normalized_name on ingredients written before
+ * ingredients were canonicalized.
+ *
+ * Streams only the documents missing the field and writes them back in unordered bulk
+ * batches. Safe to run repeatedly; once every document has the field it reads nothing.
+ */
+@Component
+public class CanonicalIngredientBackfill {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final CanonicalIngredientRegistry registry;
+    private final MongoIndexInitializer mongoIndexInitializer;
+    private final boolean runOnStartup;
+
+    public CanonicalIngredientBackfill(MongoTemplate mongoTemplate,
+                                       CanonicalIngredientRegistry registry,
+                                       MongoIndexInitializer mongoIndexInitializer,
+                                       @Value("${recipes.canonical.backfill-on-startup:true}") boolean runOnStartup) {
+        this.mongoTemplate = mongoTemplate;
+        this.registry = registry;
+        this.mongoIndexInitializer = mongoIndexInitializer;
+        this.runOnStartup = runOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        if (!runOnStartup) {
+            return;
+        }
+        StartupTasks.runInBackground("canonical-ingredient-backfill", "Canonical ingredient backfill failed", () -> {
+            backfill();
+            backfillIngredientNames();
+        });
+    }
+
+    /** Returns the number of recipes updated. */
+    public long backfill() {
+        long start = System.currentTimeMillis();
+        Query query = new Query(Criteria.where("ingredient_ids").exists(false));
+        query.fields().include("ingredients");
+
+        long updated = 0;
+        BulkOperations bulk = null;
+        int pending = 0;
+        try (Stream<Recipe> recipes = mongoTemplate.stream(query, Recipe.class)) {
+            for (Recipe recipe : (Iterable<Recipe>) recipes::iterator) {
+                List<Integer> ids = registry.internAll(recipe.getIngredients() != null ? recipe.getIngredients() : List.of());
+                if (bulk == null) {
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Recipe.class);
+                }
+                bulk.updateOne(new Query(Criteria.where("_id").is(recipe.getId())), new Update().set("ingredient_ids", ids));
+                if (++pending == BATCH_SIZE) {
+                    updated += bulk.execute().getModifiedCount();
+                    bulk = null;
+                    pending = 0;
+                }
+            }
+        }
+        if (pending > 0) {
+            updated += bulk.execute().getModifiedCount();
+        }
+
+        if (updated > 0) {
+            System.out.println("Backfilled canonical ingredient ids on " + updated + " recipes in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+        return updated;
+    }
+
+    /**
+     * Sets normalized_name on ingredients that lack it. Where several old ingredients share a
+     * normalized name only the first gets it; the unique index rejects the rest, which stay
+     * reachable through name search. Returns the number of ingredients updated.
+     */
+    public long backfillIngredientNames() {
+        mongoIndexInitializer.createIngredientIndexes();
+        long start = System.currentTimeMillis();
+        Query query = new Query(new Criteria().andOperator(
+                Criteria.where("normalized_name").exists(false),
+                Criteria.where("name").ne(null)));
+        query.fields().include("name");
+
+        long updated = 0;
+        List<Ingredient> batch = new ArrayList<>(BATCH_SIZE);
+        try (Stream<Ingredient> ingredients = mongoTemplate.stream(query, Ingredient.class)) {
+            for (Ingredient ingredient : (Iterable<Ingredient>) ingredients::iterator) {
+                batch.add(ingredient);
+                if (batch.size() == BATCH_SIZE) {
+                    updated += setNormalizedNames(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            updated += setNormalizedNames(batch);
+        }
+
+        if (updated > 0) {
+            System.out.println("Backfilled normalized names on " + updated + " ingredients in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+        return updated;
+    }
+
+    private long setNormalizedNames(List<Ingredient> ingredients) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Ingredient.class);
+        int pending = 0;
+        for (Ingredient ingredient : ingredients) {
+            String normalizedName = IngredientCanonicalizer.canonicalizeOrLiteral(ingredient.getName());
+            if (!normalizedName.isEmpty()) {
+                bulk.updateOne(new Query(Criteria.where("_id").is(ingredient.getId())),
+                        new Update().set("normalized_name", normalizedName));
+                pending++;
+            }
+        }
+        if (pending == 0) {
+            return 0;
+        }
+        try {
+            return bulk.execute().getModifiedCount();
+        } catch (BulkOperationException e) {
+            // Duplicates of an already normalized name are expected; anything else is not
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            return e.getResult().getModifiedCount();
+        }
+    }
+}
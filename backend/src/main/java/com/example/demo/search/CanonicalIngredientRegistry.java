@@ -0,0 +1,150 @@
+package com.example.demo.search;
+
+import com.example.demo.model.CanonicalIngredient;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Interns canonical ingredient names as small, stable integer ids.
+ *
+ * The mapping lives in the canonical_ingredients collection (unique on name) and is mirrored
+ * in memory, so each canonical name is held once and lookups after warm-up are map reads.
+ * New ids come from an atomic counter document; a concurrent insert of the same name by
+ * another node is resolved by re-reading the winner.
+ */
+@Component
+public class CanonicalIngredientRegistry {
+
+    private static final String COUNTERS_COLLECTION = "counters";
+    private static final String COUNTER_ID = "canonical_ingredients";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+    private final Map<Integer, String> namesById = new ConcurrentHashMap<>();
+    private final ReentrantLock internLock = new ReentrantLock();
+    private volatile boolean loaded;
+
+    public CanonicalIngredientRegistry(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /** Canonicalizes each ingredient line and returns its id, aligned with the input (null where empty). */
+    public List<Integer> internAll(List<String> ingredients) {
+        if (ingredients == null) {
+            return null;
+        }
+        List<Integer> ids = new ArrayList<>(ingredients.size());
+        for (String ingredient : ingredients) {
+            ids.add(intern(IngredientCanonicalizer.canonicalize(ingredient)));
+        }
+        return ids;
+    }
+
+    /** Returns the id of an already canonical name, creating it if needed. Null for an empty name. */
+    public Integer intern(String canonicalName) {
+        if (canonicalName == null || canonicalName.isEmpty()) {
+            return null;
+        }
+        ensureLoaded();
+        Integer id = idsByName.get(canonicalName);
+        if (id != null) {
+            return id;
+        }
+
+        internLock.lock();
+        try {
+            id = idsByName.get(canonicalName);
+            if (id != null) {
+                return id;
+            }
+            CanonicalIngredient existing = findByName(canonicalName);
+            if (existing == null) {
+                try {
+                    existing = mongoTemplate.insert(new CanonicalIngredient(nextId(), canonicalName));
+                } catch (DuplicateKeyException e) {
+                    // Another node interned the same name first
+                    existing = findByName(canonicalName);
+                }
+            }
+            remember(existing.getId(), existing.getName());
+            return existing.getId();
+        } finally {
+            internLock.unlock();
+        }
+    }
+
+    /** Returns the canonical name for an id, or null if it is unknown. */
+    public String nameOf(int id) {
+        ensureLoaded();
+        String name = namesById.get(id);
+        if (name == null) {
+            // Created by another node after we loaded
+            CanonicalIngredient found = mongoTemplate.findById(id, CanonicalIngredient.class);
+            if (found != null) {
+                remember(found.getId(), found.getName());
+                name = found.getName();
+            }
+        }
+        return name;
+    }
+
+    /** Returns the id for a canonical name if it has been interned, without creating it. */
+    public Integer find(String canonicalName) {
+        ensureLoaded();
+        return idsByName.get(canonicalName);
+    }
+
+    public Map<Integer, String> snapshot() {
+        ensureLoaded();
+        return Map.copyOf(namesById);
+    }
+
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        internLock.lock();
+        try {
+            if (!loaded) {
+                for (CanonicalIngredient ingredient : mongoTemplate.findAll(CanonicalIngredient.class)) {
+                    remember(ingredient.getId(), ingredient.getName());
+                }
+                loaded = true;
+            }
+        } finally {
+            internLock.unlock();
+        }
+    }
+
+    private void remember(int id, String name) {
+        idsByName.put(name, id);
+        namesById.put(id, name);
+    }
+
+    private CanonicalIngredient findByName(String name) {
+        return mongoTemplate.findOne(new Query(Criteria.where("name").is(name)), CanonicalIngredient.class);
+    }
+
+    private int nextId() {
+        Document counter = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(COUNTER_ID)),
+                new Update().inc("seq", 1),
+                FindAndModifyOptions.options().returnNew(true).upsert(true),
+                Document.class,
+                COUNTERS_COLLECTION);
+        return ((Number) counter.get("seq")).intValue();
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.demo.search;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary snapshot file for in-memory search structures.
+ *
+ * The file starts with a magic number and a format version and ends with the magic number
+ * again, so a truncated or foreign file is rejected instead of half-loaded. Writes go to a
+ * temporary file that is moved over the old snapshot only once complete. Reads map the
+ * file and copy primitive arrays out in bulk, so loading costs little more than paging
+ * the file in.
+ */
+final class IndexSnapshot {
+
+    // "BBIX"
+    private static final int MAGIC = 0x42424958;
+
+    private IndexSnapshot() {
+    }
+
+    static Writer create(Path path, int version) throws IOException {
+        return new Writer(path, version);
+    }
+
+    /** Opens the snapshot, or returns null if there is none or it was written in another format version. */
+    static Reader open(Path path, int version) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        Reader reader = new Reader(path);
+        if (reader.buffer.remaining() < 12 || reader.readInt() != MAGIC || reader.readInt() != version
+                || reader.buffer.getInt(reader.buffer.limit() - 4) != MAGIC) {
+            return null;
+        }
+        return reader;
+    }
+
+    static final class Writer implements Closeable {
+
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        private boolean committed;
+
+        private Writer(Path target, int version) throws IOException {
+            this.target = target;
+            Path dir = target.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            this.temp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            writeInt(MAGIC);
+            writeInt(version);
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void writeDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        // Length-prefixed UTF-8; -1 for null
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int n = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        // Bulk copies through an int view of the buffer, draining whenever it fills up
+        void writeInts(int[] values, int length) throws IOException {
+            for (int offset = 0; offset < length; ) {
+                ensure(4);
+                int n = Math.min(buffer.remaining() / 4, length - offset);
+                buffer.asIntBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 4);
+                offset += n;
+            }
+        }
+
+        void writeDoubles(double[] values, int length) throws IOException {
+            for (int offset = 0; offset < length; ) {
+                ensure(8);
+                int n = Math.min(buffer.remaining() / 8, length - offset);
+                buffer.asDoubleBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * 8);
+                offset += n;
+            }
+        }
+
+        /** Finishes the file and atomically replaces the previous snapshot with it. */
+        void commit() throws IOException {
+            writeInt(MAGIC);
+            drain();
+            channel.force(true);
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    static final class Reader {
+
+        private final MappedByteBuffer buffer;
+
+        private Reader(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Snapshot too large to map: " + channel.size() + " bytes");
+                }
+                // The mapping stays valid after the channel is closed
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        int readInt() {
+            return buffer.getInt();
+        }
+
+        long readLong() {
+            return buffer.getLong();
+        }
+
+        String readString() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int[] readInts(int length) {
+            int[] values = new int[length];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + length * 4);
+            return values;
+        }
+
+        double[] readDoubles(int length) {
+            double[] values = new double[length];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + length * 8);
+            return values;
+        }
+
+        /** Checks that exactly the trailing magic number is left, i.e. the reader consumed the whole file. */
+        boolean atEnd() {
+            return buffer.remaining() == 4 && buffer.getInt() == MAGIC;
+        }
+    }
+}
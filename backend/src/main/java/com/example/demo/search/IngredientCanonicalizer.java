@@ -0,0 +1,171 @@
+package com.example.demo.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces a free-text ingredient line to a canonical ingredient name, e.g.
+ * "2 cups chopped Tomatoes (ripe)" and "tomato" both become "tomato".
+ *
+ * Lower-cases, drops parentheticals and anything after a comma, strips leading
+ * quantities/units and preparation modifiers, and singularizes the last word. Both recipe
+ * ingredients and search queries go through here, so imperfect rules still match up.
+ */
+public final class IngredientCanonicalizer {
+
+    private static final Pattern PARENTHETICAL = Pattern.compile("\\([^)]*\\)");
+    private static final Pattern TRAILING_PHRASES = Pattern.compile(
+            "\\b(to taste|as needed|for (garnish|serving|frying|greasing|dusting)|or more|if desired)\\b");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}\\s./-]");
+    private static final Pattern QUANTITY = Pattern.compile(
+            "^[\\d¼½¾⅓⅔⅛./-]+(g|kg|mg|ml|l|oz|lb|lbs|cm|mm|in)?$");
+
+    private static final Set<String> FILLER = Set.of("a", "an", "of", "about", "approximately", "plus", "and", "or");
+
+    private static final Set<String> UNITS = Set.of(
+            "cup", "cups", "c", "tablespoon", "tablespoons", "tbsp", "tbsps", "tbs", "tb",
+            "teaspoon", "teaspoons", "tsp", "tsps", "ounce", "ounces", "oz", "pound", "pounds", "lb", "lbs",
+            "gram", "grams", "g", "kilogram", "kilograms", "kg", "ml", "milliliter", "milliliters", "l",
+            "liter", "liters", "litre", "litres", "quart", "quarts", "qt", "pint", "pints", "pt",
+            "gallon", "gallons", "pinch", "pinches", "dash", "dashes", "can", "cans", "jar", "jars",
+            "package", "packages", "pkg", "pkgs", "packet", "packets", "bag", "bags", "box", "boxes",
+            "bottle", "bottles", "container", "containers", "slice", "slices", "piece", "pieces",
+            "stick", "sticks", "clove", "cloves", "bunch", "bunches", "handful", "handfuls",
+            "sprig", "sprigs", "stalk", "stalks", "inch", "inches", "drop", "drops");
+
+    private static final Set<String> MODIFIERS = Set.of(
+            "chopped", "diced", "minced", "sliced", "grated", "shredded", "crushed", "peeled", "seeded",
+            "pitted", "trimmed", "halved", "quartered", "cubed", "julienned", "mashed", "beaten", "melted",
+            "softened", "sifted", "packed", "drained", "rinsed", "thawed", "divided", "fresh", "freshly",
+            "finely", "coarsely", "roughly", "thinly", "lightly", "large", "small", "medium", "extra",
+            "whole", "boneless", "skinless", "ripe", "raw", "cooked", "uncooked", "frozen", "canned",
+            "optional", "organic", "heaping", "level", "room-temperature", "cold", "warm");
+
+    // Words that end in "s" but are not plurals
+    private static final Set<String> INVARIANT = Set.of(
+            "molasses", "swiss", "hummus", "couscous", "asparagus", "citrus", "grits", "bass", "brussels");
+
+    private static final Map<String, String> IRREGULAR = Map.of(
+            "leaves", "leaf",
+            "halves", "half",
+            "loaves", "loaf",
+            "knives", "knife",
+            "geese", "goose",
+            "teeth", "tooth",
+            "mice", "mouse");
+
+    // Plurals ending in "ies" whose singular ends in "ie"
+    private static final Set<String> IE_PLURALS = Set.of("cookies", "brownies", "veggies", "pies", "smoothies");
+
+    private IngredientCanonicalizer() {
+    }
+
+    /** Returns the canonical name, or an empty string when nothing but quantities/units remain. */
+    public static String canonicalize(String raw) {
+        if (raw == null) {
+            return "";
+        }
+        String s = raw.toLowerCase(Locale.ROOT);
+        s = PARENTHETICAL.matcher(s).replaceAll(" ");
+        int comma = s.indexOf(',');
+        if (comma >= 0) {
+            s = s.substring(0, comma);
+        }
+        s = TRAILING_PHRASES.matcher(s).replaceAll(" ");
+        s = NON_WORD.matcher(s).replaceAll(" ");
+
+        List<String> kept = new ArrayList<>();
+        String lastSkipped = null;
+        boolean prefix = true;
+        for (String token : s.trim().split("\\s+")) {
+            token = stripEdges(token);
+            if (token.isEmpty()) {
+                continue;
+            }
+            boolean quantity = QUANTITY.matcher(token).matches();
+            if (prefix && (quantity || UNITS.contains(token) || FILLER.contains(token) || MODIFIERS.contains(token))) {
+                if (!quantity && !FILLER.contains(token)) {
+                    lastSkipped = token;
+                }
+                continue;
+            }
+            prefix = false;
+            if (quantity || MODIFIERS.contains(token)) {
+                continue;
+            }
+            kept.add(token);
+        }
+
+        // "2 cloves" or "a pinch": the unit itself is the ingredient
+        if (kept.isEmpty()) {
+            return lastSkipped != null ? singularize(lastSkipped) : "";
+        }
+        // Drop a dangling conjunction left behind by "salt and" / "oil or"
+        while (kept.size() > 1 && FILLER.contains(kept.get(kept.size() - 1))) {
+            kept.remove(kept.size() - 1);
+        }
+        int last = kept.size() - 1;
+        kept.set(last, singularize(kept.get(last)));
+        return String.join(" ", kept);
+    }
+
+    /** Like {@link #canonicalize}, but falls back to the trimmed, lower-cased input when nothing canonical remains. */
+    public static String canonicalizeOrLiteral(String raw) {
+        String canonical = canonicalize(raw);
+        return canonical.isEmpty() ? RecipeSearchIndex.normalize(raw) : canonical;
+    }
+
+    /** Whether the text has a modifier ("frozen", "whole") that {@link #canonicalize} would drop. */
+    static boolean hasModifier(String raw) {
+        if (raw == null) {
+            return false;
+        }
+        String s = NON_WORD.matcher(raw.toLowerCase(Locale.ROOT)).replaceAll(" ");
+        for (String token : s.trim().split("\\s+")) {
+            if (MODIFIERS.contains(stripEdges(token))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String singularize(String word) {
+        if (word.length() <= 3 || INVARIANT.contains(word)) {
+            return word;
+        }
+        String irregular = IRREGULAR.get(word);
+        if (irregular != null) {
+            return irregular;
+        }
+        if (word.endsWith("ies")) {
+            return IE_PLURALS.contains(word) ? word.substring(0, word.length() - 1) : word.substring(0, word.length() - 3) + "y";
+        }
+        if (word.endsWith("oes") || word.endsWith("ches") || word.endsWith("shes")
+                || word.endsWith("xes") || word.endsWith("sses") || word.endsWith("zes")) {
+            return word.substring(0, word.length() - 2);
+        }
+        if (word.endsWith("ss") || word.endsWith("us") || word.endsWith("is")) {
+            return word;
+        }
+        if (word.endsWith("s")) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    private static String stripEdges(String token) {
+        int start = 0;
+        int end = token.length();
+        while (start < end && (token.charAt(start) == '-' || token.charAt(start) == '.' || token.charAt(start) == '/')) {
+            start++;
+        }
+        while (end > start && (token.charAt(end - 1) == '-' || token.charAt(end - 1) == '.' || token.charAt(end - 1) == '/')) {
+            end--;
+        }
+        return token.substring(start, end);
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.demo.search;
+
+import com.example.demo.config.StartupTasks;
+import com.example.demo.model.Ingredient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Every ingredient by normalized name, with a {@link BkTree} for resolving misspelled
+ * names to the closest known ingredient.
+ *
+ * Receipt scans come back noisy ("tomatos", "chiken breast"), and an exact lookup would
+ * store each variant as a new ingredient. Here a name is matched exactly first and
+ * otherwise to the nearest ingredient within an edit distance that grows with its length,
+ * so short names, where one edit is already a different word ("rice", "ice"), must match
+ * exactly. Lookups never touch Mongo.
+ *
+ * Kept current by the ingredient write path and rebuilt periodically, which also picks up
+ * ingredients written by other nodes and reclaims deleted names from the tree.
+ */
+@Component
+public class IngredientDictionary {
+
+    // A put (ingredient set) or remove (ingredient null) made while a rebuild was reading Mongo
+    private record Write(String id, Ingredient ingredient) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final int maxDistance;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private BkTree tree = new BkTree();
+    private Map<String, Ingredient> byNormalizedName = new HashMap<>();
+    private Map<String, String> normalizedNameById = new HashMap<>();
+    private volatile boolean loaded;
+    // Writes the running rebuilds may have missed, replayed onto the rebuilt dictionary
+    private final List<Write> writesDuringRebuild = new ArrayList<>();
+    private int rebuildsRunning;
+
+    public IngredientDictionary(MongoTemplate mongoTemplate,
+                                @Value("${ingredients.dictionary.max-distance:2}") int maxDistance) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxDistance = Math.max(0, maxDistance);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        StartupTasks.runInBackground("ingredient-dictionary-warmup",
+                "Ingredient dictionary warm-up failed, will retry on first lookup", this::ensureLoaded);
+    }
+
+    @Scheduled(fixedDelayString = "${ingredients.dictionary.refresh-interval:PT30M}",
+            initialDelayString = "${ingredients.dictionary.refresh-interval:PT30M}")
+    public void scheduledRefresh() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            System.err.println("Ingredient dictionary refresh failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the ingredient with this normalized name (see
+     * {@link IngredientCanonicalizer#canonicalizeOrLiteral}), or failing that the closest one
+     * within the allowed edit distance, or null.
+     */
+    public Ingredient find(String normalizedName) {
+        ensureLoaded();
+        if (normalizedName == null || normalizedName.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            Ingredient exact = byNormalizedName.get(normalizedName);
+            if (exact != null) {
+                return exact;
+            }
+            String nearest = tree.nearest(normalizedName, allowedDistance(normalizedName));
+            return nearest != null ? byNormalizedName.get(nearest) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Adds a created ingredient or re-keys an edited one. A no-op until the dictionary has been loaded. */
+    public void put(Ingredient ingredient) {
+        if (ingredient == null || ingredient.getId() == null || ingredient.getNormalizedName() == null) {
+            return;
+        }
+        apply(new Write(ingredient.getId(), ingredient));
+    }
+
+    public void remove(String id) {
+        if (id == null) {
+            return;
+        }
+        apply(new Write(id, null));
+    }
+
+    // Loaded is checked under the lock, so a write racing the first load is recorded for it
+    private void apply(Write write) {
+        lock.writeLock().lock();
+        try {
+            if (rebuildsRunning > 0) {
+                writesDuringRebuild.add(write);
+            }
+            if (loaded) {
+                applyInternal(write);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                rebuild();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-reads all ingredients and replaces the dictionary. Puts and removes made while
+     * Mongo is being read are recorded and replayed onto the new dictionary before it is
+     * swapped in, since the read may or may not have seen them.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            rebuildsRunning++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            // Built aside and swapped in, so lookups aren't blocked while Mongo is read
+            BkTree freshTree = new BkTree();
+            Map<String, Ingredient> freshByName = new HashMap<>();
+            Map<String, String> freshNameById = new HashMap<>();
+            try (Stream<Ingredient> ingredients = mongoTemplate.stream(new Query(), Ingredient.class)) {
+                ingredients.forEach(ingredient -> {
+                    // Ingredients the normalized_name backfill hasn't reached yet
+                    String normalizedName = ingredient.getNormalizedName() != null
+                            ? ingredient.getNormalizedName()
+                            : IngredientCanonicalizer.canonicalizeOrLiteral(ingredient.getName());
+                    if (ingredient.getId() != null && !normalizedName.isEmpty()
+                            && freshByName.putIfAbsent(normalizedName, ingredient) == null) {
+                        freshNameById.put(ingredient.getId(), normalizedName);
+                        freshTree.add(normalizedName);
+                    }
+                });
+            }
+
+            lock.writeLock().lock();
+            try {
+                tree = freshTree;
+                byNormalizedName = freshByName;
+                normalizedNameById = freshNameById;
+                for (Write write : writesDuringRebuild) {
+                    applyInternal(write);
+                }
+                loaded = true;
+                System.out.println("Ingredient dictionary built: " + byNormalizedName.size() + " names in "
+                        + (System.currentTimeMillis() - start) + "ms");
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (--rebuildsRunning == 0) {
+                    writesDuringRebuild.clear();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // One edit per five characters, up to the configured maximum
+    private int allowedDistance(String normalizedName) {
+        return Math.min(maxDistance, normalizedName.length() / 5);
+    }
+
+    // Caller must hold the write lock
+    private void applyInternal(Write write) {
+        removeInternal(write.id());
+        if (write.ingredient() != null) {
+            addInternal(write.ingredient());
+        }
+    }
+
+    // Caller must hold the write lock
+    private void addInternal(Ingredient ingredient) {
+        byNormalizedName.put(ingredient.getNormalizedName(), ingredient);
+        normalizedNameById.put(ingredient.getId(), ingredient.getNormalizedName());
+        tree.add(ingredient.getNormalizedName());
+    }
+
+    // Caller must hold the write lock
+    private void removeInternal(String id) {
+        String normalizedName = normalizedNameById.remove(id);
+        if (normalizedName != null) {
+            byNormalizedName.remove(normalizedName);
+            tree.remove(normalizedName);
+        }
+    }
+}
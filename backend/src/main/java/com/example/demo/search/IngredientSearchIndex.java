@@ -0,0 +1,154 @@
+package com.example.demo.search;
+
+import com.example.demo.config.StartupTasks;
+import com.example.demo.model.Ingredient;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Trigram index over ingredient names, answering case-insensitive "name contains q"
+ * lookups without a regex scan of the ingredients collection.
+ */
+@Component
+@RequiredArgsConstructor
+public class IngredientSearchIndex {
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // doc id in the trigram index -> ingredient id (null while the doc id is free)
+    private final TrigramIndex names = new TrigramIndex();
+    private final ArrayList<String> ingredientIds = new ArrayList<>();
+    private final HashMap<String, Integer> docIds = new HashMap<>();
+    // Doc ids of removed ingredients, handed out again so edits and deletes don't grow the index
+    private final ArrayDeque<Integer> freeDocIds = new ArrayDeque<>();
+
+    private volatile boolean loaded;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        StartupTasks.runInBackground("ingredient-index-warmup",
+                "Ingredient search index warm-up failed, will retry on first search", this::ensureLoaded);
+    }
+
+    /** Returns the ids of ingredients whose name contains the query, in index order. */
+    public List<String> search(String query) {
+        ensureLoaded();
+
+        String q = RecipeSearchIndex.normalize(query);
+        if (q.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            IntList hits = names.search(q);
+            List<String> ids = new ArrayList<>(hits.size());
+            for (int i = 0; i < hits.size(); i++) {
+                ids.add(ingredientIds.get(hits.get(i)));
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Loaded is checked under the lock, so a write made during the initial load is applied after it
+    public void index(Ingredient ingredient) {
+        if (ingredient == null || ingredient.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+            removeInternal(ingredient.getId());
+            addInternal(ingredient);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+            removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                rebuild();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller must hold the write lock
+    private void rebuild() {
+        names.clear();
+        ingredientIds.clear();
+        docIds.clear();
+        freeDocIds.clear();
+
+        Query query = new Query();
+        query.fields().include("name");
+        try (Stream<Ingredient> ingredients = mongoTemplate.stream(query, Ingredient.class)) {
+            ingredients.forEach(this::addInternal);
+        }
+        loaded = true;
+        System.out.println("Ingredient search index built: " + docIds.size() + " ingredients");
+    }
+
+    private void addInternal(Ingredient ingredient) {
+        if (ingredient.getId() == null || ingredient.getName() == null) {
+            return;
+        }
+        String name = RecipeSearchIndex.normalize(ingredient.getName());
+        Integer docId = freeDocIds.pollFirst();
+        if (docId == null) {
+            docId = names.add(name);
+            ingredientIds.add(ingredient.getId());
+        } else {
+            names.put(docId, name);
+            ingredientIds.set(docId, ingredient.getId());
+        }
+        docIds.put(ingredient.getId(), docId);
+    }
+
+    private void removeInternal(String id) {
+        Integer docId = docIds.remove(id);
+        if (docId != null) {
+            names.remove(docId);
+            ingredientIds.set(docId, null);
+            freeDocIds.addFirst(docId);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.demo.search;
+
+import com.example.demo.config.StartupTasks;
+import com.example.demo.model.Ingredient;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Typeahead over canonical ingredient names, ranked by how many recipes use them.
+ *
+ * Every word start of every name is a key ("cherry tomato" is found by "che" and by
+ * "tom"), and the keys are kept in one sorted array. A lookup binary-searches the first
+ * key with the prefix and walks the contiguous run after it, keeping the most frequent
+ * names in a {@link TopK}. The arrays are immutable and swapped in whole, so lookups take
+ * no lock.
+ *
+ * Names come from the ingredients collection and from the canonical ingredients of
+ * indexed recipes. The dictionary is rebuilt periodically; new ingredients are merged in
+ * as they are created, in one linear pass over the sorted arrays.
+ */
+@Component
+public class IngredientSuggestIndex {
+
+    private record Dictionary(String[] keys, int[] termOfKey, String[] terms, int[] frequencies) {
+        static final Dictionary EMPTY = new Dictionary(new String[0], new int[0], new String[0], new int[0]);
+    }
+
+    // A word-start key and the term it belongs to, before the keys are laid out in arrays
+    private record Key(String key, int term) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final RecipeSearchIndex recipeSearchIndex;
+
+    // Guards merges and the swap at the end of a rebuild; lookups read the volatile dictionary only
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Dictionary dictionary = Dictionary.EMPTY;
+    // Names merged while a rebuild is reading Mongo, which the rebuild adds before swapping
+    private final List<String> mergedDuringRebuild = new ArrayList<>();
+    private int rebuildsRunning;
+    private volatile boolean loaded;
+
+    public IngredientSuggestIndex(MongoTemplate mongoTemplate, RecipeSearchIndex recipeSearchIndex) {
+        this.mongoTemplate = mongoTemplate;
+        this.recipeSearchIndex = recipeSearchIndex;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        StartupTasks.runInBackground("ingredient-suggest-warmup",
+                "Ingredient suggest index warm-up failed, will retry on first lookup", this::ensureLoaded);
+    }
+
+    @Scheduled(fixedDelayString = "${ingredients.suggest.refresh-interval:PT10M}",
+            initialDelayString = "${ingredients.suggest.refresh-interval:PT10M}")
+    public void scheduledRefresh() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            System.err.println("Ingredient suggest index refresh failed: " + e.getMessage());
+        }
+    }
+
+    /** Returns up to {@code limit} canonical names with a word starting with the prefix, most used first. */
+    public List<String> suggest(String prefix, int limit) {
+        ensureLoaded();
+        String q = normalizePrefix(prefix);
+        if (q.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        Dictionary d = dictionary;
+        String[] keys = d.keys();
+        TopK top = new TopK(limit, (a, b) -> d.terms()[a].compareTo(d.terms()[b]));
+        // A name can be reached through several of its words; count it once
+        BitSet seen = new BitSet();
+        for (int i = lowerBound(keys, q); i < keys.length && keys[i].startsWith(q); i++) {
+            int term = d.termOfKey()[i];
+            if (!seen.get(term)) {
+                seen.set(term);
+                top.offer(term, d.frequencies()[term]);
+            }
+        }
+        top.sortBestFirst();
+
+        List<String> names = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            names.add(d.terms()[top.ordinalAt(i)]);
+        }
+        return names;
+    }
+
+    /** Merges newly created ingredient names into the dictionary. A no-op until it has been loaded. */
+    public void addAll(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return;
+        }
+        List<String> canonicalNames = new ArrayList<>(names.size());
+        for (String name : names) {
+            String canonical = IngredientCanonicalizer.canonicalize(name);
+            if (!canonical.isEmpty()) {
+                canonicalNames.add(canonical);
+            }
+        }
+        if (canonicalNames.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (rebuildsRunning > 0) {
+                mergedDuringRebuild.addAll(canonicalNames);
+            }
+            if (loaded) {
+                dictionary = merge(dictionary, canonicalNames);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the names of deleted or renamed ingredients back out: each loses one use, and a
+     * name nothing uses any more is dropped. A name removed while a rebuild is reading Mongo
+     * may linger until the next rebuild.
+     */
+    public void removeAll(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (loaded) {
+                dictionary = remove(dictionary, names);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (!loaded) {
+                rebuild();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Re-reads ingredient names and recipe usage counts and replaces the dictionary. Names
+     * merged while Mongo is being read are added to the new dictionary if the read missed
+     * them; the next rebuild settles their counts.
+     */
+    public void rebuild() {
+        lock.lock();
+        try {
+            rebuildsRunning++;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            // Reading happens outside the lock, so a periodic refresh doesn't hold up merges
+            Map<String, Integer> counts = new HashMap<>(recipeSearchIndex.ingredientFrequencies());
+            Query query = new Query();
+            query.fields().include("name");
+            try (Stream<Ingredient> ingredients = mongoTemplate.stream(query, Ingredient.class)) {
+                ingredients.forEach(ingredient -> {
+                    String canonical = IngredientCanonicalizer.canonicalize(ingredient.getName());
+                    if (!canonical.isEmpty()) {
+                        counts.merge(canonical, 1, Integer::sum);
+                    }
+                });
+            }
+
+            lock.lock();
+            try {
+                long start = System.currentTimeMillis();
+                for (String name : mergedDuringRebuild) {
+                    counts.putIfAbsent(name, 1);
+                }
+                dictionary = build(counts);
+                loaded = true;
+                System.out.println("Ingredient suggest index built: " + counts.size() + " names, "
+                        + dictionary.keys().length + " keys in " + (System.currentTimeMillis() - start) + "ms");
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            lock.lock();
+            try {
+                if (--rebuildsRunning == 0) {
+                    mergedDuringRebuild.clear();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static Dictionary build(Map<String, Integer> frequencies) {
+        String[] terms = frequencies.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[] termFrequencies = new int[terms.length];
+        List<Key> keyList = new ArrayList<>(terms.length * 2);
+        for (int term = 0; term < terms.length; term++) {
+            termFrequencies[term] = frequencies.get(terms[term]);
+            addKeys(keyList, terms[term], term);
+        }
+        keyList.sort(Comparator.comparing(Key::key));
+
+        String[] keys = new String[keyList.size()];
+        int[] termOfKey = new int[keyList.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyList.get(i).key();
+            termOfKey[i] = keyList.get(i).term();
+        }
+        return new Dictionary(keys, termOfKey, terms, termFrequencies);
+    }
+
+    /**
+     * Returns the dictionary with the names added: known names get their frequency bumped,
+     * new ones are merged into the sorted term and key arrays. Only the new names are
+     * sorted; the existing arrays are walked once.
+     */
+    private static Dictionary merge(Dictionary d, List<String> names) {
+        int[] frequencies = d.frequencies().clone();
+        TreeMap<String, Integer> added = new TreeMap<>();
+        for (String name : names) {
+            int term = Arrays.binarySearch(d.terms(), name);
+            if (term >= 0) {
+                frequencies[term]++;
+            } else {
+                added.merge(name, 1, Integer::sum);
+            }
+        }
+        if (added.isEmpty()) {
+            return new Dictionary(d.keys(), d.termOfKey(), d.terms(), frequencies);
+        }
+
+        // Merge the terms, remembering where each old term moved to
+        String[] oldTerms = d.terms();
+        String[] terms = new String[oldTerms.length + added.size()];
+        int[] termFrequencies = new int[terms.length];
+        int[] moved = new int[oldTerms.length];
+        List<Key> newKeys = new ArrayList<>();
+        int i = 0;
+        int t = 0;
+        for (Map.Entry<String, Integer> name : added.entrySet()) {
+            while (i < oldTerms.length && oldTerms[i].compareTo(name.getKey()) < 0) {
+                moved[i] = t;
+                termFrequencies[t] = frequencies[i];
+                terms[t++] = oldTerms[i++];
+            }
+            termFrequencies[t] = name.getValue();
+            addKeys(newKeys, name.getKey(), t);
+            terms[t++] = name.getKey();
+        }
+        while (i < oldTerms.length) {
+            moved[i] = t;
+            termFrequencies[t] = frequencies[i];
+            terms[t++] = oldTerms[i++];
+        }
+
+        // Then the keys, remapping the old ones to the moved terms
+        newKeys.sort(Comparator.comparing(Key::key));
+        String[] oldKeys = d.keys();
+        String[] keys = new String[oldKeys.length + newKeys.size()];
+        int[] termOfKey = new int[keys.length];
+        int k = 0;
+        int j = 0;
+        for (Key key : newKeys) {
+            while (j < oldKeys.length && oldKeys[j].compareTo(key.key()) <= 0) {
+                termOfKey[k] = moved[d.termOfKey()[j]];
+                keys[k++] = oldKeys[j++];
+            }
+            termOfKey[k] = key.term();
+            keys[k++] = key.key();
+        }
+        while (j < oldKeys.length) {
+            termOfKey[k] = moved[d.termOfKey()[j]];
+            keys[k++] = oldKeys[j++];
+        }
+        return new Dictionary(keys, termOfKey, terms, termFrequencies);
+    }
+
+    // Counterpart of merge: decrements the names and drops those left unused in one pass
+    private static Dictionary remove(Dictionary d, List<String> names) {
+        int[] frequencies = d.frequencies().clone();
+        boolean dropped = false;
+        for (String name : names) {
+            int term = Arrays.binarySearch(d.terms(), IngredientCanonicalizer.canonicalize(name));
+            if (term >= 0 && frequencies[term] > 0 && --frequencies[term] == 0) {
+                dropped = true;
+            }
+        }
+        if (!dropped) {
+            return new Dictionary(d.keys(), d.termOfKey(), d.terms(), frequencies);
+        }
+
+        String[] oldTerms = d.terms();
+        int[] moved = new int[oldTerms.length];
+        int termCount = 0;
+        for (int i = 0; i < oldTerms.length; i++) {
+            moved[i] = frequencies[i] > 0 ? termCount++ : -1;
+        }
+        String[] terms = new String[termCount];
+        int[] termFrequencies = new int[termCount];
+        for (int i = 0; i < oldTerms.length; i++) {
+            if (moved[i] >= 0) {
+                terms[moved[i]] = oldTerms[i];
+                termFrequencies[moved[i]] = frequencies[i];
+            }
+        }
+
+        String[] oldKeys = d.keys();
+        int keyCount = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (moved[d.termOfKey()[i]] >= 0) {
+                keyCount++;
+            }
+        }
+        String[] keys = new String[keyCount];
+        int[] termOfKey = new int[keyCount];
+        int k = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            int term = moved[d.termOfKey()[i]];
+            if (term >= 0) {
+                keys[k] = oldKeys[i];
+                termOfKey[k++] = term;
+            }
+        }
+        return new Dictionary(keys, termOfKey, terms, termFrequencies);
+    }
+
+    // One key per word start: the whole name, then each later word onwards
+    private static void addKeys(List<Key> keys, String name, int term) {
+        for (int start = 0; start >= 0; start = nextWordStart(name, start)) {
+            keys.add(new Key(name.substring(start), term));
+        }
+    }
+
+    private static int nextWordStart(String name, int from) {
+        int space = name.indexOf(' ', from);
+        return space >= 0 && space + 1 < name.length() ? space + 1 : -1;
+    }
+
+    // Index of the first key >= prefix
+    private static int lowerBound(String[] keys, String prefix) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Lower-cased, trimmed and with runs of whitespace collapsed, like canonical names
+    private static String normalizePrefix(String prefix) {
+        return RecipeSearchIndex.normalize(prefix).replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.demo.search;
+
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of non-negative ints in an open-addressing table sized for an expected
+ * number of distinct keys, so counting costs in proportion to the keys seen rather than to
+ * the largest key. Keys are also kept in first-seen order for iteration.
+ */
+final class IntCountMap {
+
+    private static final int EMPTY = -1;
+
+    private final int[] keys;
+    private final int[] counts;
+    private final int mask;
+    private final IntList order;
+
+    IntCountMap(int expectedKeys) {
+        // At most half full, so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(4, expectedKeys) * 2 - 1) << 1;
+        this.keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        this.counts = new int[capacity];
+        this.mask = capacity - 1;
+        this.order = new IntList(Math.max(4, expectedKeys));
+    }
+
+    void increment(int key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            order.add(key);
+        }
+        counts[slot]++;
+    }
+
+    int get(int key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /** The distinct keys, in the order they were first counted. */
+    IntList keys() {
+        return order;
+    }
+
+    // Ordinals are dense and sequential; spread them so neighbours don't cluster
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.demo.search;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints. Used for posting lists so that each entry
+ * costs 4 bytes instead of a boxed Integer.
+ */
+public final class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(4);
+    }
+
+    public IntList(int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    // Inserts the value keeping the list sorted ascending; appending in order stays O(1)
+    public void insertSorted(int value) {
+        if (size == 0 || values[size - 1] <= value) {
+            add(value);
+            return;
+        }
+        int at = lowerBound(value);
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        System.arraycopy(values, at, values, at + 1, size - at);
+        values[at] = value;
+        size++;
+    }
+
+    // Removes one occurrence of the value from a list sorted ascending; returns whether it was there
+    public boolean removeSorted(int value) {
+        int at = lowerBound(value);
+        if (at == size || values[at] != value) {
+            return false;
+        }
+        System.arraycopy(values, at + 1, values, at, size - at - 1);
+        size--;
+        return true;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    // Index of the first value >= key, assuming the list is sorted ascending
+    public int lowerBound(int key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    // Rewrites every value through the mapping, dropping values that map to -1
+    public void remap(int[] mapping) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int mapped = mapping[values[i]];
+            if (mapped >= 0) {
+                values[kept++] = mapped;
+            }
+        }
+        size = kept;
+    }
+
+    public void trimToSize() {
+        if (values.length > size) {
+            values = Arrays.copyOf(values, Math.max(1, size));
+        }
+    }
+}
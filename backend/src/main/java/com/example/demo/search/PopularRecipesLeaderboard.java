@@ -0,0 +1,308 @@
+package com.example.demo.search;
+
+import com.example.demo.config.StartupTasks;
+import com.example.demo.model.PopularRecipe;
+import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipePage;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Materialized leaderboard of the most popular recipes, ranked by a Bayesian average:
+ *
+ *     score = (reviews * rating + m * mean) / (reviews + m)
+ *
+ * where mean is the catalog-wide average rating and m is a prior number of reviews, so a
+ * single 5-star review can't outrank hundreds of 4.8s. Recipes without a rating are not
+ * ranked.
+ *
+ * The board is an immutable list swapped in through a volatile field, so reads are a
+ * binary search and a sub-list copy with no locking. It is rebuilt from Mongo periodically
+ * and patched on every recipe write in between. A write can only move the edited recipe,
+ * so a recipe that drops out leaves a gap that is filled at the next rebuild. The board is
+ * also persisted to the popular_recipes collection so a restarting node can serve it
+ * before its first rebuild finishes.
+ */
+@Component
+public class PopularRecipesLeaderboard {
+
+    private static final Comparator<Entry> RANKING = Comparator.comparingDouble(Entry::score).reversed()
+            .thenComparing(entry -> entry.recipe().getId());
+
+    private record Entry(Recipe recipe, double score) {
+    }
+
+    private record Board(List<Entry> entries, double priorMean, boolean loaded) {
+        static final Board EMPTY = new Board(List.of(), 0, false);
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final int size;
+    private final double priorReviews;
+
+    // Serializes rebuilds and patches; readers never take it
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Board board = Board.EMPTY;
+
+    public PopularRecipesLeaderboard(MongoTemplate mongoTemplate,
+                                     @Value("${recipes.popular.size:500}") int size,
+                                     @Value("${recipes.popular.prior-reviews:20}") double priorReviews) {
+        this.mongoTemplate = mongoTemplate;
+        this.size = Math.max(1, size);
+        // Must be positive, otherwise an unreviewed recipe divides by zero
+        this.priorReviews = Math.max(priorReviews, 1);
+    }
+
+    // Serves the persisted board right away, then rebuilds it
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        StartupTasks.runInBackground("popular-recipes-warmup",
+                "Popular recipes warm-up failed, will retry on first request", () -> {
+                    loadMaterialized();
+                    refresh();
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${recipes.popular.refresh-interval:PT10M}",
+            initialDelayString = "${recipes.popular.refresh-interval:PT10M}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            System.err.println("Popular recipes refresh failed: " + e.getMessage());
+        }
+    }
+
+    /** Returns one page of the leaderboard, starting after the cursor if given. */
+    public RecipePage page(int limit, ScoreCursor after) {
+        Board current = board;
+        if (!current.loaded()) {
+            ensureLoaded();
+            current = board;
+        }
+        List<Entry> entries = current.entries();
+
+        // First entry ranking after the cursor
+        int from = 0;
+        if (after != null) {
+            int lo = 0;
+            int hi = entries.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                Entry entry = entries.get(mid);
+                if (after.ranksBefore(entry.score(), entry.recipe().getId())) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            from = lo;
+        }
+
+        int to = Math.min(entries.size(), from + limit);
+        List<Recipe> recipes = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            recipes.add(entries.get(i).recipe());
+        }
+        String nextCursor = null;
+        if (to < entries.size() && to > from) {
+            Entry last = entries.get(to - 1);
+            nextCursor = new ScoreCursor(last.score(), last.recipe().getId()).encode();
+        }
+        return new RecipePage(recipes, nextCursor);
+    }
+
+    /** Re-ranks a created or edited recipe. A no-op until the board has been loaded. */
+    public void update(Recipe recipe) {
+        if (!board.loaded() || recipe == null || recipe.getId() == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            Board current = board;
+            List<Entry> entries = new ArrayList<>(current.entries());
+            Entry previous = null;
+            for (Entry entry : entries) {
+                if (entry.recipe().getId().equals(recipe.getId())) {
+                    previous = entry;
+                    break;
+                }
+            }
+            boolean changed = previous != null && entries.remove(previous);
+            Entry evicted = null;
+            Entry added = null;
+            if (recipe.getRating() != null) {
+                Entry entry = new Entry(recipe, score(recipe, current.priorMean()));
+                int at = Collections.binarySearch(entries, entry, RANKING);
+                at = at >= 0 ? at : -at - 1;
+                if (at < size) {
+                    entries.add(at, entry);
+                    added = entry;
+                    changed = true;
+                    if (entries.size() > size) {
+                        evicted = entries.remove(entries.size() - 1);
+                    }
+                }
+            }
+            if (!changed) {
+                return;
+            }
+            board = new Board(List.copyOf(entries), current.priorMean(), true);
+
+            if (added != null) {
+                // Most edits don't touch the rating; the persisted row only holds the score
+                if (previous == null || previous.score() != added.score()) {
+                    mongoTemplate.save(new PopularRecipe(recipe.getId(), added.score(), current.priorMean()));
+                }
+            } else {
+                mongoTemplate.remove(new Query(Criteria.where("_id").is(recipe.getId())), PopularRecipe.class);
+            }
+            if (evicted != null) {
+                mongoTemplate.remove(new Query(Criteria.where("_id").is(evicted.recipe().getId())), PopularRecipe.class);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void remove(String id) {
+        if (!board.loaded() || id == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            Board current = board;
+            List<Entry> entries = new ArrayList<>(current.entries());
+            if (entries.removeIf(entry -> entry.recipe().getId().equals(id))) {
+                board = new Board(List.copyOf(entries), current.priorMean(), true);
+                mongoTemplate.remove(new Query(Criteria.where("_id").is(id)), PopularRecipe.class);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Re-ranks the whole catalog in Mongo and replaces the board and its persisted copy. */
+    public void refresh() {
+        writeLock.lock();
+        try {
+            long start = System.currentTimeMillis();
+            double mean = meanRating();
+            List<Entry> entries = new ArrayList<>();
+            for (Recipe recipe : topRecipes(mean)) {
+                entries.add(new Entry(recipe, score(recipe, mean)));
+            }
+            // Same order as the aggregation; re-sorted so ties on the score match the Java comparison
+            entries.sort(RANKING);
+            board = new Board(List.copyOf(entries), mean, true);
+            persist(entries, mean);
+            System.out.println("Popular recipes leaderboard rebuilt: " + entries.size() + " recipes in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        writeLock.lock();
+        try {
+            if (!board.loaded()) {
+                refresh();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private double score(Recipe recipe, double priorMean) {
+        double reviews = recipe.getReviewCount() != null ? recipe.getReviewCount() : 0;
+        return (reviews * recipe.getRating() + priorReviews * priorMean) / (reviews + priorReviews);
+    }
+
+    private double meanRating() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("rating").ne(null)),
+                Aggregation.group().avg("rating").as("mean"));
+        Document result = mongoTemplate.aggregate(aggregation, "recipes", Document.class).getUniqueMappedResult();
+        return result != null && result.get("mean") != null ? ((Number) result.get("mean")).doubleValue() : 0;
+    }
+
+    // Scores every rated recipe server-side and returns only the best ones
+    private List<Recipe> topRecipes(double mean) {
+        Document reviews = new Document("$ifNull", List.of("$review_count", 0));
+        Document score = new Document("$divide", List.of(
+                new Document("$add", List.of(new Document("$multiply", List.of(reviews, "$rating")), priorReviews * mean)),
+                new Document("$add", List.of(reviews, priorReviews))));
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("rating").ne(null)),
+                Aggregation.stage(new Document("$addFields", new Document("popularity", score))),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "popularity").and(Sort.by(Sort.Direction.ASC, "_id"))),
+                Aggregation.limit(size));
+        return mongoTemplate.aggregate(aggregation, "recipes", Recipe.class).getMappedResults();
+    }
+
+    // Upserts the current board and drops recipes that left it
+    private void persist(List<Entry> entries, double mean) {
+        List<String> ids = new ArrayList<>(entries.size());
+        if (!entries.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PopularRecipe.class);
+            for (Entry entry : entries) {
+                ids.add(entry.recipe().getId());
+                bulk.upsert(new Query(Criteria.where("_id").is(entry.recipe().getId())),
+                        new Update().set("score", entry.score()).set("prior_mean", mean));
+            }
+            bulk.execute();
+        }
+        mongoTemplate.remove(new Query(Criteria.where("_id").nin(ids)), PopularRecipe.class);
+    }
+
+    void loadMaterialized() {
+        writeLock.lock();
+        try {
+            if (board.loaded()) {
+                return;
+            }
+            List<PopularRecipe> rows = mongoTemplate.findAll(PopularRecipe.class);
+            if (rows.isEmpty()) {
+                return;
+            }
+            Map<String, Recipe> recipes = new HashMap<>();
+            List<String> ids = rows.stream().map(PopularRecipe::getId).toList();
+            for (Recipe recipe : mongoTemplate.find(new Query(Criteria.where("_id").in(ids)), Recipe.class)) {
+                recipes.put(recipe.getId(), recipe);
+            }
+            double mean = rows.get(0).getPriorMean() != null ? rows.get(0).getPriorMean() : 0;
+            List<Entry> entries = new ArrayList<>(rows.size());
+            for (PopularRecipe row : rows) {
+                Recipe recipe = recipes.get(row.getId());
+                if (recipe != null && recipe.getRating() != null) {
+                    // Re-scored rather than trusting the stored score, in case the recipe changed since
+                    entries.add(new Entry(recipe, score(recipe, mean)));
+                }
+            }
+            entries.sort(RANKING);
+            board = new Board(List.copyOf(entries), mean, true);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.demo.search;
+
+import com.example.demo.model.NutritionInfo;
+import com.example.demo.model.Recipe;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Column-oriented copy of the numeric recipe fields used by filters, one primitive array
+ * per field indexed by recipe ordinal.
+ *
+ * Missing doubles are stored as NaN and missing ints as {@link #MISSING_INT}; both are
+ * chosen so that a missing value never fails a bound, matching the Mongo filter semantics
+ * where recipes without the field always pass. Not thread-safe; guarded by the owning index.
+ */
+final class RecipeColumns {
+
+    static final int MISSING_INT = Integer.MIN_VALUE;
+
+    static final Set<String> SORT_FIELDS = Set.of("calories", "protein", "rating", "prepTime", "cookTime");
+
+    private double[] calories = new double[0];
+    private double[] protein = new double[0];
+    private double[] rating = new double[0];
+    private int[] prepTime = new int[0];
+    private int[] cookTime = new int[0];
+    private int size;
+
+    void set(int ordinal, Recipe recipe) {
+        ensureCapacity(ordinal + 1);
+        NutritionInfo nutrition = recipe.getNutrition();
+        calories[ordinal] = nutrition != null ? orNaN(nutrition.getCalories()) : Double.NaN;
+        protein[ordinal] = nutrition != null ? orNaN(nutrition.getProtein()) : Double.NaN;
+        rating[ordinal] = orNaN(recipe.getRating());
+        prepTime[ordinal] = recipe.getPrepTimeMinutes() != null ? recipe.getPrepTimeMinutes() : MISSING_INT;
+        cookTime[ordinal] = recipe.getCookTimeMinutes() != null ? recipe.getCookTimeMinutes() : MISSING_INT;
+        size = Math.max(size, ordinal + 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sets bit {@code i} of {@code out} for every ordinal in [from, to) within all bounds.
+     * Unset bounds should be passed as infinities / {@link Integer#MAX_VALUE}. The loop
+     * allocates nothing and has no data-dependent branches.
+     */
+    void scan(double maxCalories, double minProtein, int maxPrepTime, int maxCookTime,
+              long[] out, int from, int to) {
+        double[] calories = this.calories;
+        double[] protein = this.protein;
+        int[] prepTime = this.prepTime;
+        int[] cookTime = this.cookTime;
+        for (int i = from; i < to; i++) {
+            // NaN compares false, so a missing value never rejects the recipe
+            boolean match = !(calories[i] > maxCalories)
+                    & !(protein[i] < minProtein)
+                    & prepTime[i] <= maxPrepTime
+                    & cookTime[i] <= maxCookTime;
+            out[i >>> 6] |= (match ? 1L : 0L) << i;
+        }
+    }
+
+    /**
+     * Returns an int that orders like the column value (missing values sort lowest), so
+     * filtered results can be ranked with {@link TopK}.
+     */
+    int sortKey(String sortBy, int ordinal) {
+        return switch (sortBy) {
+            case "calories" -> sortableBits(calories[ordinal]);
+            case "protein" -> sortableBits(protein[ordinal]);
+            case "rating" -> sortableBits(rating[ordinal]);
+            case "prepTime" -> prepTime[ordinal];
+            case "cookTime" -> cookTime[ordinal];
+            default -> throw new IllegalArgumentException("Unknown sortBy: " + sortBy);
+        };
+    }
+
+    void remap(int[] mapping, int newSize) {
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int target = mapping[ordinal];
+            if (target >= 0) {
+                // target <= ordinal, so values are only ever moved towards the front
+                calories[target] = calories[ordinal];
+                protein[target] = protein[ordinal];
+                rating[target] = rating[ordinal];
+                prepTime[target] = prepTime[ordinal];
+                cookTime[target] = cookTime[ordinal];
+            }
+        }
+        size = newSize;
+    }
+
+    // Detached copy trimmed to size, so a snapshot can be written without holding the index lock
+    RecipeColumns copy() {
+        RecipeColumns copy = new RecipeColumns();
+        copy.calories = Arrays.copyOf(calories, size);
+        copy.protein = Arrays.copyOf(protein, size);
+        copy.rating = Arrays.copyOf(rating, size);
+        copy.prepTime = Arrays.copyOf(prepTime, size);
+        copy.cookTime = Arrays.copyOf(cookTime, size);
+        copy.size = size;
+        return copy;
+    }
+
+    void writeTo(IndexSnapshot.Writer out) throws IOException {
+        out.writeInt(size);
+        out.writeDoubles(calories, size);
+        out.writeDoubles(protein, size);
+        out.writeDoubles(rating, size);
+        out.writeInts(prepTime, size);
+        out.writeInts(cookTime, size);
+    }
+
+    void readFrom(IndexSnapshot.Reader in) {
+        size = in.readInt();
+        calories = in.readDoubles(size);
+        protein = in.readDoubles(size);
+        rating = in.readDoubles(size);
+        prepTime = in.readInts(size);
+        cookTime = in.readInts(size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= calories.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, calories.length + (calories.length >> 1) + 16);
+        calories = Arrays.copyOf(calories, newCapacity);
+        protein = Arrays.copyOf(protein, newCapacity);
+        rating = Arrays.copyOf(rating, newCapacity);
+        prepTime = Arrays.copyOf(prepTime, newCapacity);
+        cookTime = Arrays.copyOf(cookTime, newCapacity);
+    }
+
+    private static double orNaN(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    // Float bits flipped so that signed int order matches numeric order; NaN maps to the minimum
+    private static int sortableBits(double value) {
+        if (Double.isNaN(value)) {
+            return Integer.MIN_VALUE;
+        }
+        int bits = Float.floatToIntBits((float) value);
+        return bits >= 0 ? bits : bits ^ Integer.MAX_VALUE;
+    }
+}
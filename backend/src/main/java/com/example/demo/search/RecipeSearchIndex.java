@@ -0,0 +1,945 @@
+package com.example.demo.search;
+
+import com.example.demo.config.StartupTasks;
+import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipeFilterRequest;
+import com.example.demo.model.RecipeTombstone;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory inverted index from canonical ingredients to the recipes that use them.
+ *
+ * Every recipe gets a dense ordinal. Each canonical ingredient (the "term", identified by
+ * its interned id from {@link CanonicalIngredientRegistry}) gets a posting list of the
+ * ordinals that contain it, once per occurrence, so a search only touches the terms that
+ * match the query and the recipes listed under them.
+ *
+ * Canonical names leave out modifiers, so a query that has one ("frozen", "whole milk") or
+ * that no canonical name contains is matched against the ingredient lines as written
+ * instead. Those get a second, smaller dictionary of the distinct lines with their own
+ * posting lists.
+ *
+ * The same ordinals index a columnar copy of the numeric filter fields and a tag
+ * dictionary, so filtered browsing is a primitive scan instead of a collection read.
+ *
+ * When a snapshot path is configured the whole structure is periodically written to disk.
+ * At boot the snapshot is mapped back in and only the recipes changed since are read from
+ * Mongo, instead of the whole collection: those updated or inserted after it was taken,
+ * and those deleted after it, which deletion records as a {@link RecipeTombstone}.
+ */
+@Component
+public class RecipeSearchIndex {
+
+    // Smallest range of ordinals worth handing to a separate worker
+    private static final int MIN_CHUNK_SIZE = 8192;
+
+    // Bump whenever the snapshot layout changes; older files are then ignored and rebuilt
+    private static final int SNAPSHOT_VERSION = 2;
+    // Writes saved to Mongo but not yet indexed, or stamped by another node's clock, within
+    // this window before a snapshot are replayed again on load
+    private static final Duration SNAPSHOT_OVERLAP = Duration.ofMinutes(1);
+    private static final int CATCH_UP_BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final CanonicalIngredientRegistry registry;
+    private final ForkJoinPool searchPool;
+    // Estimated amount of work (postings or ordinals to visit) above which scoring runs in parallel
+    private final int parallelThreshold;
+    // Snapshot file, or null when snapshots are disabled
+    private final Path snapshotPath;
+    // How long tombstones are kept; a snapshot older than this can't be caught up
+    private final Duration tombstoneRetention;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // ordinal -> recipe id (null once the recipe has been removed)
+    private final ArrayList<String> recipeIds = new ArrayList<>();
+    private final HashMap<String, Integer> ordinals = new HashMap<>();
+
+    // canonical id -> canonical name (as a trigram-indexed dictionary), and canonical id ->
+    // recipe ordinals (null for ids no indexed recipe uses)
+    private final TrigramIndex terms = new TrigramIndex();
+    private final ArrayList<IntList> postings = new ArrayList<>();
+    private int termCount;
+
+    // line id -> distinct ingredient line (trimmed, lower-cased), line id -> its canonical id
+    // (-1 if it has none), and line id -> recipe ordinals
+    private final TrigramIndex lines = new TrigramIndex();
+    private final HashMap<String, Integer> lineIds = new HashMap<>();
+    private final IntList lineTerms = new IntList();
+    private final ArrayList<IntList> linePostings = new ArrayList<>();
+
+    // ordinal -> numeric filter fields, and exact tag -> recipe ordinals
+    private final RecipeColumns columns = new RecipeColumns();
+    private final HashMap<String, IntList> tagPostings = new HashMap<>();
+
+    private int removedCount;
+    private volatile boolean loaded;
+    // Bumped on every write, so an unchanged index isn't snapshotted again
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile long snapshotModifications = -1;
+
+    public RecipeSearchIndex(MongoTemplate mongoTemplate,
+                             CanonicalIngredientRegistry registry,
+                             @Qualifier("recipeSearchPool") ForkJoinPool searchPool,
+                             @Value("${recipes.search.parallel-threshold:200000}") int parallelThreshold,
+                             @Value("${recipes.search.snapshot.path:}") String snapshotPath,
+                             @Value("${recipes.search.snapshot.tombstone-retention:P30D}") Duration tombstoneRetention) {
+        this.mongoTemplate = mongoTemplate;
+        this.registry = registry;
+        this.searchPool = searchPool;
+        this.parallelThreshold = parallelThreshold;
+        this.snapshotPath = snapshotPath == null || snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.tombstoneRetention = tombstoneRetention;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        StartupTasks.runInBackground("recipe-index-warmup",
+                "Recipe search index warm-up failed, will retry on first search", () -> {
+                    ensureLoaded();
+                    saveSnapshot();
+                });
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns, for each canonical ingredient, the number of live recipes using it. */
+    public Map<String, Integer> ingredientFrequencies() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> frequencies = new HashMap<>(termCount * 2);
+            for (int termId = 0; termId < postings.size(); termId++) {
+                IntList posting = postings.get(termId);
+                if (posting == null) {
+                    continue;
+                }
+                // Postings list a recipe once per occurrence and keep removed ordinals until compaction
+                int recipes = 0;
+                int previous = -1;
+                for (int i = 0; i < posting.size(); i++) {
+                    int ordinal = posting.get(i);
+                    if (ordinal != previous && recipeIds.get(ordinal) != null) {
+                        recipes++;
+                    }
+                    previous = ordinal;
+                }
+                if (recipes > 0) {
+                    frequencies.put(terms.get(termId), recipes);
+                }
+            }
+            return frequencies;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns one page of ids of recipes with at least one canonical ingredient containing one
+     * of the (canonicalized) queries, ranked by the number of matching ingredients (highest first, then by id).
+     * Queries with a modifier, or matching no canonical ingredient, match ingredient lines containing them.
+     * Only the best {@code limit + 1} matches after the cursor are kept while ranking.
+     */
+    public SearchPage search(List<String> queries, int limit, SearchCursor after) {
+        ensureLoaded();
+
+        List<String> normalizedQueries = queries.stream()
+                .map(RecipeSearchIndex::queryTerm)
+                .filter(q -> !q.isEmpty())
+                .distinct()
+                .toList();
+        if (normalizedQueries.isEmpty()) {
+            return new SearchPage(List.of(), null);
+        }
+
+        lock.readLock().lock();
+        try {
+            // Only the dictionary entries sharing the queries' trigrams are checked
+            BitSet matchedTerms = new BitSet(terms.size());
+            List<String> lineQueries = new ArrayList<>();
+            for (String q : normalizedQueries) {
+                IntList hits = IngredientCanonicalizer.hasModifier(q) ? null : terms.search(q);
+                if (hits == null || hits.isEmpty()) {
+                    lineQueries.add(q);
+                    continue;
+                }
+                for (int i = 0; i < hits.size(); i++) {
+                    matchedTerms.set(hits.get(i));
+                }
+            }
+            IntList[] lists = lineQueries.isEmpty() ? termPostings(matchedTerms) : linePostings(matchedTerms, lineQueries);
+            long work = 0;
+            for (IntList posting : lists) {
+                work += posting.size();
+            }
+
+            // One extra slot tells us whether there is a next page
+            TopK top;
+            if (work < parallelThreshold) {
+                top = scoreSparse(lists, (int) work, limit + 1, after);
+            } else {
+                top = newTopK(limit + 1);
+                for (TopK partial : forEachChunk(recipeIds.size(), (from, to) -> scoreRange(lists, from, to, limit + 1, after))) {
+                    top.addAll(partial);
+                }
+            }
+            top.sortBestFirst();
+
+            int pageSize = Math.min(limit, top.size());
+            List<String> ids = new ArrayList<>(pageSize);
+            for (int i = 0; i < pageSize; i++) {
+                ids.add(recipeIds.get(top.ordinalAt(i)));
+            }
+            String nextCursor = null;
+            if (top.size() > limit) {
+                int last = top.ordinalAt(limit - 1);
+                nextCursor = new SearchCursor(top.scoreAt(limit - 1), recipeIds.get(last)).encode();
+            }
+            return new SearchPage(ids, nextCursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private IntList[] termPostings(BitSet matchedTerms) {
+        IntList[] lists = new IntList[matchedTerms.cardinality()];
+        int n = 0;
+        for (int termId = matchedTerms.nextSetBit(0); termId >= 0; termId = matchedTerms.nextSetBit(termId + 1)) {
+            lists[n++] = postings.get(termId);
+        }
+        return lists;
+    }
+
+    // Postings of the lines containing a line query, plus those of every line of a matched
+    // canonical ingredient, so an ingredient matched both ways still counts once
+    private IntList[] linePostings(BitSet matchedTerms, List<String> lineQueries) {
+        BitSet matchedLines = new BitSet(lines.size());
+        for (String q : lineQueries) {
+            IntList hits = lines.search(q);
+            for (int i = 0; i < hits.size(); i++) {
+                matchedLines.set(hits.get(i));
+            }
+        }
+        if (!matchedTerms.isEmpty()) {
+            for (int lineId = 0; lineId < lineTerms.size(); lineId++) {
+                int termId = lineTerms.get(lineId);
+                if (termId >= 0 && matchedTerms.get(termId)) {
+                    matchedLines.set(lineId);
+                }
+            }
+        }
+        IntList[] lists = new IntList[matchedLines.cardinality()];
+        int n = 0;
+        for (int lineId = matchedLines.nextSetBit(0); lineId >= 0; lineId = matchedLines.nextSetBit(lineId + 1)) {
+            lists[n++] = linePostings.get(lineId);
+        }
+        return lists;
+    }
+
+    // Scores every ordinal in the matched posting lists into a top-k, in time and memory
+    // proportional to the postings visited rather than to the size of the catalog
+    private TopK scoreSparse(IntList[] lists, int work, int k, SearchCursor after) {
+        IntCountMap scores = new IntCountMap(work);
+        for (IntList posting : lists) {
+            for (int i = 0; i < posting.size(); i++) {
+                scores.increment(posting.get(i));
+            }
+        }
+
+        TopK top = newTopK(k);
+        IntList matched = scores.keys();
+        for (int i = 0; i < matched.size(); i++) {
+            int ordinal = matched.get(i);
+            offer(top, ordinal, scores.get(ordinal), after);
+        }
+        return top;
+    }
+
+    // Scores the ordinals in [from, to) against the matched posting lists into a local top-k.
+    // A parallel chunk covers enough of the postings that a dense array is the cheaper counter.
+    private TopK scoreRange(IntList[] lists, int from, int to, int k, SearchCursor after) {
+        int[] scores = new int[to - from];
+        IntList matched = new IntList();
+        for (IntList posting : lists) {
+            for (int i = posting.lowerBound(from); i < posting.size(); i++) {
+                int ordinal = posting.get(i);
+                if (ordinal >= to) {
+                    break;
+                }
+                if (scores[ordinal - from]++ == 0) {
+                    matched.add(ordinal);
+                }
+            }
+        }
+
+        TopK top = newTopK(k);
+        for (int i = 0; i < matched.size(); i++) {
+            int ordinal = matched.get(i);
+            offer(top, ordinal, scores[ordinal - from], after);
+        }
+        return top;
+    }
+
+    // Skips removed recipes and those on or before the cursor's page
+    private void offer(TopK top, int ordinal, int score, SearchCursor after) {
+        String id = recipeIds.get(ordinal);
+        if (id == null || (after != null && !after.ranksBefore(score, id))) {
+            return;
+        }
+        top.offer(ordinal, score);
+    }
+
+    /**
+     * Returns the ids of up to {@code limit} recipes passing all filters, using the same
+     * semantics as the Mongo filter query: numeric bounds pass recipes without the field,
+     * and the diet type must match a tag exactly (lower-cased).
+     */
+    public List<String> filter(RecipeFilterRequest filters, int limit) {
+        String sortBy = filters.getSortBy();
+        if (sortBy != null && !RecipeColumns.SORT_FIELDS.contains(sortBy)) {
+            throw new IllegalArgumentException("Unknown sortBy: " + sortBy + ", expected one of " + RecipeColumns.SORT_FIELDS);
+        }
+        ensureLoaded();
+
+        double maxCalories = filters.getMaxCalories() != null ? filters.getMaxCalories() : Double.POSITIVE_INFINITY;
+        double minProtein = filters.getMinProtein() != null ? filters.getMinProtein() : Double.NEGATIVE_INFINITY;
+        int maxPrepTime = filters.getMaxPrepTime() != null ? filters.getMaxPrepTime() : Integer.MAX_VALUE;
+        int maxCookTime = filters.getMaxCookTime() != null ? filters.getMaxCookTime() : Integer.MAX_VALUE;
+        String dietType = filters.getDietType() != null && !filters.getDietType().isBlank()
+                ? filters.getDietType().toLowerCase() : null;
+
+        lock.readLock().lock();
+        try {
+            int n = recipeIds.size();
+            boolean parallel = n >= parallelThreshold;
+            long[] matches = new long[(n + 63) >>> 6];
+            if (parallel) {
+                // Chunks are word-aligned, so each task writes to its own part of the bitmap
+                forEachChunk(n, (from, to) -> {
+                    columns.scan(maxCalories, minProtein, maxPrepTime, maxCookTime, matches, from, to);
+                    return null;
+                });
+            } else {
+                columns.scan(maxCalories, minProtein, maxPrepTime, maxCookTime, matches, 0, n);
+            }
+
+            if (dietType != null) {
+                IntList tagged = tagPostings.get(dietType);
+                if (tagged == null) {
+                    return List.of();
+                }
+                long[] tagBits = new long[matches.length];
+                for (int i = 0; i < tagged.size(); i++) {
+                    int ordinal = tagged.get(i);
+                    tagBits[ordinal >>> 6] |= 1L << ordinal;
+                }
+                for (int w = 0; w < matches.length; w++) {
+                    matches[w] &= tagBits[w];
+                }
+            }
+
+            if (sortBy == null) {
+                // Unsorted: first matches in index order
+                List<String> ids = new ArrayList<>(Math.min(limit, 64));
+                for (int w = 0; w < matches.length && ids.size() < limit; w++) {
+                    long word = matches[w];
+                    while (word != 0 && ids.size() < limit) {
+                        String id = recipeIds.get((w << 6) + Long.numberOfTrailingZeros(word));
+                        if (id != null) {
+                            ids.add(id);
+                        }
+                        word &= word - 1;
+                    }
+                }
+                return ids;
+            }
+
+            // Sorted: rank by the column value (missing values first ascending, last descending), then id
+            boolean descending = Boolean.TRUE.equals(filters.getDescending());
+            TopK top;
+            if (parallel) {
+                top = newTopK(limit);
+                for (TopK partial : forEachChunk(n, (from, to) -> rankMatches(matches, from, to, limit, sortBy, descending))) {
+                    top.addAll(partial);
+                }
+            } else {
+                top = rankMatches(matches, 0, n, limit, sortBy, descending);
+            }
+            top.sortBestFirst();
+            List<String> ids = new ArrayList<>(top.size());
+            for (int i = 0; i < top.size(); i++) {
+                ids.add(recipeIds.get(top.ordinalAt(i)));
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Ranks the set bits in [from, to) by the sort column into a local top-k
+    private TopK rankMatches(long[] matches, int from, int to, int k, String sortBy, boolean descending) {
+        TopK top = newTopK(k);
+        // from is word-aligned, so whole words can be walked bit by bit
+        for (int w = from >>> 6; w < matches.length && (w << 6) < to; w++) {
+            long word = matches[w];
+            while (word != 0) {
+                int ordinal = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (ordinal >= to || recipeIds.get(ordinal) == null) {
+                    continue;
+                }
+                int key = columns.sortKey(sortBy, ordinal);
+                top.offer(ordinal, descending ? key : ~key);
+            }
+        }
+        return top;
+    }
+
+    private TopK newTopK(int k) {
+        return new TopK(k, (a, b) -> recipeIds.get(a).compareTo(recipeIds.get(b)));
+    }
+
+    @FunctionalInterface
+    private interface ChunkTask<T> {
+        T run(int from, int to);
+    }
+
+    /**
+     * Splits [0, n) into word-aligned chunks and runs them on the search pool. The caller
+     * holds the read lock for the duration, so the workers see a stable index.
+     */
+    private <T> List<T> forEachChunk(int n, ChunkTask<T> task) {
+        int chunkCount = Math.max(1, searchPool.getParallelism() * 4);
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, ((n + chunkCount - 1) / chunkCount + 63) & ~63);
+        List<Callable<T>> calls = new ArrayList<>();
+        for (int from = 0; from < n; from += chunkSize) {
+            int start = from;
+            int end = Math.min(n, from + chunkSize);
+            calls.add(() -> task.run(start, end));
+        }
+        try {
+            List<T> results = new ArrayList<>(calls.size());
+            for (Future<T> future : searchPool.invokeAll(calls)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching recipes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Parallel recipe search failed", e.getCause());
+        }
+    }
+
+    /**
+     * Adds or replaces a recipe in the index. A no-op until the index has been loaded,
+     * since the initial load will pick the recipe up from Mongo. Loaded is checked under
+     * the write lock: a write made while a load is running waits for it and then applies,
+     * since the load may have read the collection before the write reached it.
+     */
+    public void index(Recipe recipe) {
+        if (recipe == null || recipe.getId() == null) {
+            return;
+        }
+        // May intern new names in Mongo, so done before taking the lock
+        List<Integer> ingredientIds = canonicalIds(recipe);
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+            removeInternal(recipe.getId());
+            addInternal(recipe, ingredientIds);
+            compactIfNeeded();
+            modifications.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+            removeInternal(id);
+            compactIfNeeded();
+            modifications.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                rebuild();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller must hold the write lock
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        clear();
+        registry.ensureLoaded();
+
+        if (loadSnapshot()) {
+            loaded = true;
+            System.out.println("Recipe search index restored from snapshot: " + ordinals.size() + " recipes, "
+                    + termCount + " distinct ingredients in " + (System.currentTimeMillis() - start) + "ms");
+            return;
+        }
+
+        try (Stream<Recipe> recipes = mongoTemplate.stream(indexedFields(new Query()), Recipe.class)) {
+            recipes.forEach(recipe -> addInternal(recipe, canonicalIds(recipe)));
+        }
+        for (IntList posting : postings) {
+            if (posting != null) {
+                posting.trimToSize();
+            }
+        }
+        for (IntList posting : linePostings) {
+            posting.trimToSize();
+        }
+
+        loaded = true;
+        System.out.println("Recipe search index built: " + ordinals.size() + " recipes, "
+                + termCount + " distinct ingredients in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void clear() {
+        recipeIds.clear();
+        ordinals.clear();
+        terms.clear();
+        postings.clear();
+        termCount = 0;
+        lines.clear();
+        lineIds.clear();
+        lineTerms.clear();
+        linePostings.clear();
+        columns.clear();
+        tagPostings.clear();
+        removedCount = 0;
+    }
+
+    // Only the fields the index is built from are read
+    private static Query indexedFields(Query query) {
+        query.fields()
+                .include("ingredients")
+                .include("ingredient_ids")
+                .include("tags")
+                .include("nutrition.calories")
+                .include("nutrition.protein")
+                .include("prep_time_minutes")
+                .include("cook_time_minutes")
+                .include("rating");
+        return query;
+    }
+
+    /**
+     * Writes the index to the snapshot file if it changed since the last snapshot. The
+     * arrays are copied under the read lock and written out after releasing it, so writes
+     * only wait for the copy, not for the file and its fsync.
+     */
+    @Scheduled(fixedDelayString = "${recipes.search.snapshot.interval:PT15M}",
+            initialDelayString = "${recipes.search.snapshot.interval:PT15M}")
+    public void saveSnapshot() {
+        if (snapshotPath == null || !loaded || modifications.get() == snapshotModifications) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long version;
+        LocalDateTime takenAt;
+        String[] ids;
+        RecipeColumns columnsCopy;
+        List<Integer> termIds = new ArrayList<>();
+        List<String> termNames = new ArrayList<>();
+        List<int[]> termPostings = new ArrayList<>();
+        String[] lineTexts;
+        int[] lineTermIds;
+        List<int[]> lineOrdinals = new ArrayList<>();
+        List<String> tags = new ArrayList<>();
+        List<int[]> tagOrdinals = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            version = modifications.get();
+            takenAt = LocalDateTime.now();
+            ids = recipeIds.toArray(new String[0]);
+            columnsCopy = columns.copy();
+            for (int termId = 0; termId < postings.size(); termId++) {
+                IntList posting = postings.get(termId);
+                if (posting != null) {
+                    termIds.add(termId);
+                    termNames.add(terms.get(termId));
+                    termPostings.add(posting.toArray());
+                }
+            }
+            lineTexts = new String[linePostings.size()];
+            for (int lineId = 0; lineId < lineTexts.length; lineId++) {
+                lineTexts[lineId] = lines.get(lineId);
+                lineOrdinals.add(linePostings.get(lineId).toArray());
+            }
+            lineTermIds = lineTerms.toArray();
+            for (var tag : tagPostings.entrySet()) {
+                tags.add(tag.getKey());
+                tagOrdinals.add(tag.getValue().toArray());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try (IndexSnapshot.Writer out = IndexSnapshot.create(snapshotPath, SNAPSHOT_VERSION)) {
+            out.writeString(takenAt.toString());
+            out.writeInt(ids.length);
+            for (String id : ids) {
+                out.writeString(id);
+            }
+            columnsCopy.writeTo(out);
+
+            out.writeInt(termIds.size());
+            for (int i = 0; i < termIds.size(); i++) {
+                int[] posting = termPostings.get(i);
+                out.writeInt(termIds.get(i));
+                out.writeString(termNames.get(i));
+                out.writeInt(posting.length);
+                out.writeInts(posting, posting.length);
+            }
+
+            out.writeInt(lineTexts.length);
+            for (int lineId = 0; lineId < lineTexts.length; lineId++) {
+                int[] posting = lineOrdinals.get(lineId);
+                out.writeString(lineTexts[lineId]);
+                out.writeInt(lineTermIds[lineId]);
+                out.writeInt(posting.length);
+                out.writeInts(posting, posting.length);
+            }
+
+            out.writeInt(tags.size());
+            for (int i = 0; i < tags.size(); i++) {
+                int[] posting = tagOrdinals.get(i);
+                out.writeString(tags.get(i));
+                out.writeInt(posting.length);
+                out.writeInts(posting, posting.length);
+            }
+            out.commit();
+            snapshotModifications = version;
+            System.out.println("Recipe search index snapshot written to " + snapshotPath + " in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } catch (IOException e) {
+            System.err.println("Failed to write recipe search index snapshot: " + e.getMessage());
+        }
+    }
+
+    // Caller must hold the write lock. Returns false (leaving the index empty) if there is no usable snapshot.
+    private boolean loadSnapshot() {
+        if (snapshotPath == null) {
+            return false;
+        }
+        try {
+            IndexSnapshot.Reader in = IndexSnapshot.open(snapshotPath, SNAPSHOT_VERSION);
+            if (in == null) {
+                return false;
+            }
+            LocalDateTime takenAt = LocalDateTime.parse(in.readString());
+            if (takenAt.isBefore(LocalDateTime.now().minus(tombstoneRetention))) {
+                // Deletions since then may have expired, so catch-up could miss them
+                System.err.println("Ignoring recipe search index snapshot " + snapshotPath
+                        + ": taken at " + takenAt + ", before the tombstone retention window");
+                return false;
+            }
+            int n = in.readInt();
+            for (int ordinal = 0; ordinal < n; ordinal++) {
+                String id = in.readString();
+                recipeIds.add(id);
+                if (id != null) {
+                    ordinals.put(id, ordinal);
+                } else {
+                    removedCount++;
+                }
+            }
+            columns.readFrom(in);
+
+            int termTotal = in.readInt();
+            for (int i = 0; i < termTotal; i++) {
+                int termId = in.readInt();
+                String name = in.readString();
+                int[] ordinalsOfTerm = in.readInts(in.readInt());
+                while (postings.size() <= termId) {
+                    postings.add(null);
+                }
+                IntList posting = new IntList(ordinalsOfTerm.length);
+                for (int ordinal : ordinalsOfTerm) {
+                    posting.add(ordinal);
+                }
+                terms.put(termId, name);
+                postings.set(termId, posting);
+            }
+            termCount = termTotal;
+
+            int lineTotal = in.readInt();
+            for (int lineId = 0; lineId < lineTotal; lineId++) {
+                String line = in.readString();
+                int termId = in.readInt();
+                int[] ordinalsOfLine = in.readInts(in.readInt());
+                IntList posting = new IntList(ordinalsOfLine.length);
+                for (int ordinal : ordinalsOfLine) {
+                    posting.add(ordinal);
+                }
+                lines.add(line);
+                lineIds.put(line, lineId);
+                lineTerms.add(termId);
+                linePostings.add(posting);
+            }
+
+            int tagTotal = in.readInt();
+            for (int i = 0; i < tagTotal; i++) {
+                String tag = in.readString();
+                int[] ordinalsOfTag = in.readInts(in.readInt());
+                IntList posting = new IntList(ordinalsOfTag.length);
+                for (int ordinal : ordinalsOfTag) {
+                    posting.add(ordinal);
+                }
+                tagPostings.put(tag, posting);
+            }
+            if (!in.atEnd()) {
+                throw new IOException("unexpected data after the last section");
+            }
+
+            catchUp(takenAt.minus(SNAPSHOT_OVERLAP));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring recipe search index snapshot " + snapshotPath + ": " + e.getMessage());
+            clear();
+            return false;
+        }
+    }
+
+    /**
+     * Brings a restored snapshot up to date: re-reads recipes updated or inserted since it
+     * was taken and drops those deleted since. Inserts without updated_at (bulk imports) are
+     * found by _id, whose ObjectId starts with its creation time; deletions are read from the
+     * tombstones. All three reads are served by indexes and return only the changes.
+     */
+    private void catchUp(LocalDateTime since) {
+        Set<String> stale = new HashSet<>();
+        ObjectId firstIdSince = new ObjectId(Date.from(since.atZone(ZoneId.systemDefault()).toInstant()));
+        Query changed = new Query(new Criteria().orOperator(
+                Criteria.where("updated_at").gt(since),
+                Criteria.where("_id").gt(firstIdSince)));
+        changed.fields().include("_id");
+        try (Stream<Recipe> recipes = mongoTemplate.stream(changed, Recipe.class)) {
+            recipes.forEach(recipe -> stale.add(recipe.getId()));
+        }
+
+        // A tombstoned recipe is dropped and then replayed like the rest, so one whose
+        // delete never went through after the tombstone was written comes back
+        int removed = 0;
+        try (Stream<RecipeTombstone> tombstones = mongoTemplate.stream(
+                new Query(Criteria.where("deleted_at").gt(since)), RecipeTombstone.class)) {
+            for (RecipeTombstone tombstone : (Iterable<RecipeTombstone>) tombstones::iterator) {
+                if (ordinals.containsKey(tombstone.getId())) {
+                    removeInternal(tombstone.getId());
+                    removed++;
+                }
+                stale.add(tombstone.getId());
+            }
+        }
+
+        List<String> batch = new ArrayList<>(CATCH_UP_BATCH_SIZE);
+        for (String id : stale) {
+            batch.add(id);
+            if (batch.size() == CATCH_UP_BATCH_SIZE) {
+                replay(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            replay(batch);
+        }
+        compactIfNeeded();
+        System.out.println("Recipe search index caught up since " + since + ": "
+                + stale.size() + " recipes re-read, " + removed + " removed");
+    }
+
+    private void replay(List<String> ids) {
+        try (Stream<Recipe> recipes = mongoTemplate.stream(indexedFields(new Query(Criteria.where("_id").in(ids))), Recipe.class)) {
+            recipes.forEach(recipe -> {
+                removeInternal(recipe.getId());
+                addInternal(recipe, canonicalIds(recipe));
+            });
+        }
+    }
+
+    // Canonical ids stored on the recipe, or interned now for recipes not yet backfilled
+    private List<Integer> canonicalIds(Recipe recipe) {
+        List<String> ingredients = recipe.getIngredients();
+        List<Integer> stored = recipe.getIngredientIds();
+        if (ingredients == null || (stored != null && stored.size() == ingredients.size())) {
+            return stored;
+        }
+        return registry.internAll(ingredients);
+    }
+
+    private void addInternal(Recipe recipe, List<Integer> ingredientIds) {
+        if (recipe.getId() == null) {
+            return;
+        }
+        int ordinal = recipeIds.size();
+        recipeIds.add(recipe.getId());
+        ordinals.put(recipe.getId(), ordinal);
+        columns.set(ordinal, recipe);
+
+        if (recipe.getTags() != null) {
+            for (String tag : recipe.getTags()) {
+                if (tag != null) {
+                    tagPostings.computeIfAbsent(tag, k -> new IntList(2)).add(ordinal);
+                }
+            }
+        }
+
+        List<String> ingredients = recipe.getIngredients();
+        if (ingredients != null) {
+            for (int i = 0; i < ingredients.size(); i++) {
+                String line = normalize(ingredients.get(i));
+                if (line.isEmpty()) continue;
+                Integer lineId = lineIds.get(line);
+                if (lineId == null) {
+                    lineId = lines.add(line);
+                    lineIds.put(line, lineId);
+                    Integer termId = ingredientIds != null && i < ingredientIds.size() ? ingredientIds.get(i) : null;
+                    lineTerms.add(termId != null ? termId : -1);
+                    linePostings.add(new IntList(2));
+                }
+                linePostings.get(lineId).add(ordinal);
+            }
+        }
+
+        if (ingredientIds == null) {
+            return;
+        }
+        for (Integer termId : ingredientIds) {
+            if (termId == null) continue;
+            while (postings.size() <= termId) {
+                postings.add(null);
+            }
+            if (postings.get(termId) == null) {
+                String name = registry.nameOf(termId);
+                if (name == null) continue;
+                terms.put(termId, name);
+                postings.set(termId, new IntList(2));
+                termCount++;
+            }
+            postings.get(termId).add(ordinal);
+        }
+    }
+
+    private void removeInternal(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal != null) {
+            recipeIds.set(ordinal, null);
+            removedCount++;
+        }
+    }
+
+    // Drops removed ordinals from every posting list once they make up a large share of the index
+    private void compactIfNeeded() {
+        if (removedCount < 1024 || removedCount < ordinals.size() / 4) {
+            return;
+        }
+        int[] mapping = new int[recipeIds.size()];
+        ArrayList<String> compacted = new ArrayList<>(ordinals.size());
+        for (int ordinal = 0; ordinal < recipeIds.size(); ordinal++) {
+            String id = recipeIds.get(ordinal);
+            if (id == null) {
+                mapping[ordinal] = -1;
+            } else {
+                mapping[ordinal] = compacted.size();
+                ordinals.put(id, compacted.size());
+                compacted.add(id);
+            }
+        }
+        for (IntList posting : postings) {
+            if (posting != null) {
+                posting.remap(mapping);
+            }
+        }
+        for (IntList posting : linePostings) {
+            posting.remap(mapping);
+        }
+        for (IntList posting : tagPostings.values()) {
+            posting.remap(mapping);
+        }
+        columns.remap(mapping, compacted.size());
+        recipeIds.clear();
+        recipeIds.addAll(compacted);
+        removedCount = 0;
+    }
+
+    // Queries are canonicalized like ingredients; one that is nothing but filler ("a", "cups")
+    // is still matched literally rather than dropped. One with a modifier is kept as written,
+    // since canonicalizing would drop the word that narrows it ("whole milk" to "milk").
+    static String queryTerm(String query) {
+        if (IngredientCanonicalizer.hasModifier(query)) {
+            return normalize(query);
+        }
+        return IngredientCanonicalizer.canonicalizeOrLiteral(query);
+    }
+
+    static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.demo.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque position in a list ranked by a fractional score (highest first, then by id):
+ * the score and id of the last item returned.
+ */
+public record ScoreCursor(double score, String id) {
+
+    public String encode() {
+        String raw = Double.toString(score) + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ScoreCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new ScoreCursor(Double.parseDouble(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    public boolean ranksBefore(double otherScore, String otherId) {
+        if (score != otherScore) {
+            return score > otherScore;
+        }
+        return id.compareTo(otherId) < 0;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.demo.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque position in a ranked result list: the score and id of the last item returned.
+ * The next page holds everything that ranks strictly after it (lower score, or the
+ * same score and a greater id).
+ */
+public record SearchCursor(int score, String id) {
+
+    public String encode() {
+        String raw = score + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new SearchCursor(Integer.parseInt(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    public boolean ranksBefore(int otherScore, String otherId) {
+        if (score != otherScore) {
+            return score > otherScore;
+        }
+        return id.compareTo(otherId) < 0;
+    }
+}
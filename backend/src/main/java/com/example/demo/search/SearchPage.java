@@ -0,0 +1,9 @@
+package com.example.demo.search;
+
+import java.util.List;
+
+/**
+ * One page of ranked recipe ids plus the cursor for the next page (null on the last page).
+ */
+public record SearchPage(List<String> ids, String nextCursor) {
+}
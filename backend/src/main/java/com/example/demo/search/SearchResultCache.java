@@ -0,0 +1,66 @@
+package com.example.demo.search;
+
+import com.example.demo.cache.LruCache;
+import com.example.demo.model.RecipeFilterRequest;
+import com.example.demo.model.RecipePage;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches recipe search and filter results under a canonical form of the query, so the
+ * same pantry sent in a different order or casing is a single entry.
+ *
+ * Every key is prefixed with a version number. Writes to recipes bump the version, which
+ * makes all earlier entries unreachable; they then age out of the LRU.
+ */
+@Component
+public class SearchResultCache {
+
+    private final AtomicLong version = new AtomicLong();
+    // Weighted by the number of recipes held, so a few huge pages can't crowd out everything else
+    private final LruCache<String, RecipePage> cache;
+
+    public SearchResultCache(@Value("${recipes.search.cache.max-recipes:20000}") long maxRecipes,
+                             MeterRegistry meterRegistry) {
+        this.cache = new LruCache<>(maxRecipes, null, page -> page.getRecipes().size());
+        this.cache.bindTo(meterRegistry, "recipe-search");
+    }
+
+    public RecipePage get(String key) {
+        return cache.get(key);
+    }
+
+    public void put(String key, RecipePage page) {
+        cache.put(key, page);
+    }
+
+    /** Makes every cached result stale. Called on any recipe write. */
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    public String searchKey(List<String> ingredients, int limit, String cursor) {
+        List<String> canonical = ingredients.stream()
+                .filter(Objects::nonNull)
+                .map(RecipeSearchIndex::queryTerm)
+                .filter(s -> !s.isEmpty())
+                .distinct()
+                .sorted()
+                .toList();
+        return version.get() + "|search|" + String.join("\u0000", canonical) + "|" + limit + "|" + (cursor != null ? cursor : "");
+    }
+
+    public String filterKey(RecipeFilterRequest filters, int limit) {
+        // Diet type is matched exactly after lower-casing, so it is not trimmed here
+        String dietType = filters.getDietType() != null && !filters.getDietType().isBlank()
+                ? filters.getDietType().toLowerCase() : "";
+        return version.get() + "|filter|" + filters.getMaxCalories() + "|" + filters.getMinProtein() + "|" + dietType
+                + "|" + filters.getMaxPrepTime() + "|" + filters.getMaxCookTime()
+                + "|" + filters.getSortBy() + "|" + Boolean.TRUE.equals(filters.getDescending()) + "|" + limit;
+    }
+}
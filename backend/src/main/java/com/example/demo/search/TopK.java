@@ -0,0 +1,140 @@
+package com.example.demo.search;
+
+/**
+ * Keeps the best {@code k} (score, ordinal) pairs seen so far in a primitive binary heap.
+ *
+ * Higher scores rank first; equal scores are ordered by the supplied tie-break over
+ * ordinals (negative means the first ordinal ranks first). The heap root is always the
+ * worst retained entry, so each offer costs O(log k) and nothing outside the top k is kept.
+ */
+public final class TopK {
+
+    @FunctionalInterface
+    public interface TieBreak {
+        int compare(int ordinalA, int ordinalB);
+    }
+
+    private final int k;
+    private final TieBreak tieBreak;
+    private final int[] ordinals;
+    private final int[] scores;
+    private int size;
+    private boolean sorted;
+
+    public TopK(int k, TieBreak tieBreak) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        this.tieBreak = tieBreak;
+        this.ordinals = new int[k];
+        this.scores = new int[k];
+    }
+
+    public void offer(int ordinal, int score) {
+        if (sorted) {
+            throw new IllegalStateException("TopK has already been sorted");
+        }
+        if (size < k) {
+            ordinals[size] = ordinal;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (ranksBefore(score, ordinal, scores[0], ordinals[0])) {
+            ordinals[0] = ordinal;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    public void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ordinals[i], other.scores[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the retained entries best-first in place so they can be read with
+     * {@link #ordinalAt} and {@link #scoreAt}. No further offers are allowed afterwards.
+     */
+    public TopK sortBestFirst() {
+        // Heap-sort: repeatedly move the worst entry to the end of the shrinking heap
+        int heapSize = size;
+        while (size > 1) {
+            swap(0, --size);
+            siftDown(0);
+        }
+        size = heapSize;
+        sorted = true;
+        return this;
+    }
+
+    public int ordinalAt(int index) {
+        checkSorted(index);
+        return ordinals[index];
+    }
+
+    public int scoreAt(int index) {
+        checkSorted(index);
+        return scores[index];
+    }
+
+    private void checkSorted(int index) {
+        if (!sorted) {
+            throw new IllegalStateException("Call sortBestFirst() first");
+        }
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+
+    private boolean ranksBefore(int scoreA, int ordinalA, int scoreB, int ordinalB) {
+        if (scoreA != scoreB) {
+            return scoreA > scoreB;
+        }
+        return tieBreak.compare(ordinalA, ordinalB) < 0;
+    }
+
+    // Min-heap on rank: the parent always ranks after its children
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!ranksBefore(scores[parent], ordinals[parent], scores[i], ordinals[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < size && ranksBefore(scores[left], ordinals[left], scores[right], ordinals[right])) {
+                worst = right;
+            }
+            if (!ranksBefore(scores[i], ordinals[i], scores[worst], ordinals[worst])) {
+                break;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int o = ordinals[a];
+        ordinals[a] = ordinals[b];
+        ordinals[b] = o;
+        int s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+    }
+}
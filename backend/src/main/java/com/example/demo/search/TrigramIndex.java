@@ -0,0 +1,155 @@
+package com.example.demo.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Substring index over a set of lower-cased strings.
+ *
+ * Each string is broken into overlapping 3-character windows. A "contains q" lookup
+ * intersects the posting lists of q's trigrams and only verifies the surviving
+ * candidates with {@link String#contains}, so the answer is exactly the same as
+ * scanning every string. Not thread-safe; owners guard it with their own lock.
+ */
+public final class TrigramIndex {
+
+    // doc id -> text (null once removed)
+    private final ArrayList<String> texts = new ArrayList<>();
+    private final HashMap<Long, IntList> postings = new HashMap<>();
+
+    /**
+     * Indexes the text and returns its doc id. Ids are handed out in increasing
+     * order, which keeps every posting list sorted.
+     */
+    public int add(String text) {
+        int docId = texts.size();
+        texts.add(text);
+        for (long trigram : trigrams(text)) {
+            postings.computeIfAbsent(trigram, k -> new IntList(2)).add(docId);
+        }
+        return docId;
+    }
+
+    /**
+     * Indexes the text under a doc id chosen by the caller, e.g. an id from an external
+     * dictionary. The id must not be in use. Posting lists stay sorted whatever the order.
+     */
+    public void put(int docId, String text) {
+        while (texts.size() <= docId) {
+            texts.add(null);
+        }
+        texts.set(docId, text);
+        for (long trigram : trigrams(text)) {
+            postings.computeIfAbsent(trigram, k -> new IntList(2)).insertSorted(docId);
+        }
+    }
+
+    /**
+     * Removes the text from its posting lists, so nothing of it is left behind; the doc id
+     * may then be reused through {@link #put}.
+     */
+    public void remove(int docId) {
+        String text = texts.get(docId);
+        if (text == null) {
+            return;
+        }
+        for (long trigram : trigrams(text)) {
+            IntList posting = postings.get(trigram);
+            if (posting != null && posting.removeSorted(docId) && posting.isEmpty()) {
+                postings.remove(trigram);
+            }
+        }
+        texts.set(docId, null);
+    }
+
+    public String get(int docId) {
+        return texts.get(docId);
+    }
+
+    public int size() {
+        return texts.size();
+    }
+
+    public void clear() {
+        texts.clear();
+        postings.clear();
+    }
+
+    /** Returns the ids, in ascending order, of every live text that contains the query. */
+    public IntList search(String query) {
+        IntList result = new IntList();
+        if (query.isEmpty()) {
+            return result;
+        }
+
+        if (query.length() < 3) {
+            // Too short to form a trigram: fall back to checking every text
+            for (int docId = 0; docId < texts.size(); docId++) {
+                String text = texts.get(docId);
+                if (text != null && text.contains(query)) {
+                    result.add(docId);
+                }
+            }
+            return result;
+        }
+
+        Set<Long> queryTrigrams = trigrams(query);
+        IntList[] lists = new IntList[queryTrigrams.size()];
+        int n = 0;
+        for (long trigram : queryTrigrams) {
+            IntList posting = postings.get(trigram);
+            if (posting == null) {
+                return result;
+            }
+            lists[n++] = posting;
+        }
+        // Intersect starting from the rarest trigram so the candidate set shrinks fastest
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+
+        IntList candidates = lists[0];
+        for (int i = 1; i < lists.length && !candidates.isEmpty(); i++) {
+            candidates = intersect(candidates, lists[i]);
+        }
+
+        for (int i = 0; i < candidates.size(); i++) {
+            int docId = candidates.get(i);
+            String text = texts.get(docId);
+            if (text != null && text.contains(query)) {
+                result.add(docId);
+            }
+        }
+        return result;
+    }
+
+    private static IntList intersect(IntList a, IntList b) {
+        IntList out = new IntList(Math.min(a.size(), b.size()));
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            int x = a.get(i);
+            int y = b.get(j);
+            if (x == y) {
+                out.add(x);
+                i++;
+                j++;
+            } else if (x < y) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return out;
+    }
+
+    private static Set<Long> trigrams(String text) {
+        Set<Long> result = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            long key = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+            result.add(key);
+        }
+        return result;
+    }
+}
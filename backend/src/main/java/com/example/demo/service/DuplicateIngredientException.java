@@ -0,0 +1,19 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Ingredient;
+
+/** An ingredient was created or renamed to a name that normalizes to another ingredient's. */
+public class DuplicateIngredientException extends RuntimeException {
+
+    // The ingredient already holding the name, or null if it couldn't be read back
+    private final Ingredient existing;
+
+    public DuplicateIngredientException(String message, Ingredient existing) {
+        super(message);
+        this.existing = existing;
+    }
+
+    public Ingredient getExisting() {
+        return existing;
+    }
+}
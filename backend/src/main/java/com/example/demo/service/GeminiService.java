@@ -1,18 +1,41 @@
 package com.example.demo.service;
 
+import com.example.demo.cache.ReceiptExtractionCache;
+import com.example.demo.cache.RecipeGenerationCache;
+import com.example.demo.image.ReceiptImage;
+import com.example.demo.image.ReceiptImagePreprocessor;
+import com.example.demo.limit.AdaptiveBulkhead;
+import com.example.demo.limit.CircuitBreaker;
+import com.example.demo.limit.UpstreamRejectedException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.reactivestreams.Publisher;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.ResponseEntity;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,20 +45,48 @@ public class GeminiService {
     private final WebClient webClient;
     private final ObjectMapper objectMapper;
     private final String apiKey;
+    private final ReceiptImagePreprocessor receiptImagePreprocessor;
+    private final ReceiptExtractionCache receiptExtractionCache;
+    private final RecipeGenerationCache recipeGenerationCache;
+    private final Scheduler blockingScheduler;
+    // Cap concurrent Gemini calls per kind, adapting to its latency and 429s
+    private final AdaptiveBulkhead extractionBulkhead;
+    private final AdaptiveBulkhead generationBulkhead;
+    // Outside the bulkheads: while Gemini is down, calls fail at once instead of queueing for it
+    private final CircuitBreaker circuitBreaker;
+    // Request bodies are written by a blocking stream copy, so off the event loop
+    private final Executor bodyWriter;
 
     private static final String MODEL_NAME = "gemini-2.5-flash"; 
+    // Bump when the recipe prompt changes, so cached output from the old prompt is not served
+    private static final int RECIPE_PROMPT_VERSION = 1;
 
-    public GeminiService(@Value("${gemini.api.key}") String apiKey) {
+    private static final int BODY_CHUNK_SIZE = 16 * 1024;
+
+    public GeminiService(@Value("${gemini.api.key}") String apiKey,
+                         ReceiptImagePreprocessor receiptImagePreprocessor,
+                         ReceiptExtractionCache receiptExtractionCache,
+                         RecipeGenerationCache recipeGenerationCache,
+                         Scheduler blockingScheduler,
+                         @Qualifier("extractionBulkhead") AdaptiveBulkhead extractionBulkhead,
+                         @Qualifier("generationBulkhead") AdaptiveBulkhead generationBulkhead,
+                         WebClient geminiWebClient,
+                         CircuitBreaker geminiCircuitBreaker) {
         if (apiKey == null || apiKey.isEmpty()) {
             throw new IllegalStateException("GEMINI_API_KEY is not set!");
         }
 
         this.apiKey = apiKey;
+        this.receiptImagePreprocessor = receiptImagePreprocessor;
+        this.receiptExtractionCache = receiptExtractionCache;
+        this.recipeGenerationCache = recipeGenerationCache;
+        this.blockingScheduler = blockingScheduler;
+        this.bodyWriter = task -> blockingScheduler.schedule(task);
+        this.extractionBulkhead = extractionBulkhead;
+        this.generationBulkhead = generationBulkhead;
+        this.circuitBreaker = geminiCircuitBreaker;
         
-        this.webClient = WebClient.builder()
-                .baseUrl("https://generativelanguage.googleapis.com")
-                .defaultHeader("Content-Type", "application/json")
-                .build();
+        this.webClient = geminiWebClient;
         
         this.objectMapper = new ObjectMapper();
         
@@ -43,18 +94,40 @@ public class GeminiService {
         System.out.println("API Key (first 10 chars): " + apiKey.substring(0, Math.min(10, apiKey.length())) + "...");
     }
 
-    public List<String> extractIngredientsFromImage(MultipartFile image) throws IOException {
+    // What the blocking half of an extraction hands to the HTTP call: a cached answer, or the image to send
+    private record Extraction(String cacheKey, List<String> cached, ReceiptImage image, byte[] head, byte[] tail) {
+    }
+
+    /**
+     * Ingredient names on a receipt photo. Hashing, cache lookups and image decoding run on
+     * the blocking scheduler; the Gemini call itself holds no thread while waiting.
+     */
+    public Mono<List<String>> extractIngredientsFromImage(MultipartFile image) {
         if (image == null || image.isEmpty()) {
-            throw new IllegalArgumentException("No image uploaded");
+            return Mono.error(new IllegalArgumentException("No image uploaded"));
         }
+        return Mono.fromCallable(() -> prepareExtraction(image))
+                .subscribeOn(blockingScheduler)
+                .flatMap(extraction -> extraction.cached() != null
+                        ? Mono.just(extraction.cached())
+                        : requestIngredients(extraction));
+    }
 
-        byte[] bytes = image.getBytes();
-        String base64Image = Base64.getEncoder().encodeToString(bytes);
+    private Extraction prepareExtraction(MultipartFile image) throws IOException {
+        // The same receipt sent again byte for byte (or, if enabled, re-photographed) skips the model
+        // Keyed by model too, so a model upgrade doesn't serve the old model's answers
+        String cacheKey = MODEL_NAME + ":" + ReceiptExtractionCache.contentHash(image);
+        List<String> cached = receiptExtractionCache.get(cacheKey);
+        if (cached != null) {
+            return new Extraction(cacheKey, cached, null, null, null);
+        }
 
-        Map<String, Object> inlineData = Map.of(
-                "mimeType", image.getContentType(),
-                "data", base64Image
-        );
+        // Upright, grayscale and downscaled: far smaller than the phone's photo, same text
+        ReceiptImage prepared = receiptImagePreprocessor.prepare(image);
+        cached = receiptExtractionCache.getSimilar(cacheKey, prepared.perceptualHash());
+        if (cached != null) {
+            return new Extraction(cacheKey, cached, null, null, null);
+        }
 
         // food ingredients only
         String prompt = "Analyze this receipt image and extract ONLY food and beverage items that can be used for cooking. " +
@@ -65,52 +138,95 @@ public class GeminiService {
                 "Format example: [\"tomatoes\", \"chicken\", \"rice\", \"olive oil\"]. " +
                 "Do not include prices, quantities, or any other text - ONLY the ingredient names in a JSON array.";
 
-        Map<String, Object> requestBody = Map.of(
-                "contents", List.of(
-                        Map.of(
-                                "parts", List.of(
-                                        Map.of("text", prompt),
-                                        Map.of("inline_data", inlineData)
-                                )
-                        )
-                )
-        );
+        // {"contents":[{"parts":[{"text":...},{"inline_data":{"mimeType":...,"data":"<base64>"}}]}]}
+        byte[] head = ("{\"contents\":[{\"parts\":[{\"text\":" + objectMapper.writeValueAsString(prompt)
+                + "},{\"inline_data\":{\"mimeType\":" + objectMapper.writeValueAsString(prepared.mimeType())
+                + ",\"data\":\"").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = "\"}}]}]}".getBytes(StandardCharsets.UTF_8);
+        return new Extraction(cacheKey, null, prepared, head, tail);
+    }
 
-        try {
-            URI uri = UriComponentsBuilder
-                    .fromHttpUrl("https://generativelanguage.googleapis.com/v1beta/models/" + MODEL_NAME + ":generateContent")
-                    .queryParam("key", apiKey)
-                    .build()
-                    .toUri();
-            
-            System.out.println("📤 Making request to Gemini API...");
-            System.out.println("🔗 Endpoint: " + uri.toString().replace(apiKey, "***"));
-            
-            ResponseEntity<Map<String, Object>> response = webClient.post()
-                    .uri(uri)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .toEntity(new ParameterizedTypeReference<Map<String, Object>>() {})
-                    .block();
-
-            if (response == null || response.getBody() == null) {
-                throw new RuntimeException("No response from Gemini API");
-            }
+    private Mono<List<String>> requestIngredients(Extraction extraction) {
+        ReceiptImage prepared = extraction.image();
+        long contentLength = inlineImageContentLength(extraction.head(), prepared, extraction.tail());
+        URI uri = UriComponentsBuilder
+                .fromHttpUrl("https://generativelanguage.googleapis.com/v1beta/models/" + MODEL_NAME + ":generateContent")
+                .queryParam("key", apiKey)
+                .build()
+                .toUri();
+        
+        System.out.println("📤 Making request to Gemini API...");
+        System.out.println("🔗 Endpoint: " + uri.toString().replace(apiKey, "***"));
+        
+        return circuitBreaker.run(() -> extractionBulkhead.run(() -> webClient.post()
+                        .uri(uri)
+                        .contentLength(contentLength)
+                        .body(BodyInserters.fromDataBuffers(inlineImageBody(extraction.head(), prepared, extraction.tail(), bodyWriter)))
+                        .retrieve()
+                        .toEntity(new ParameterizedTypeReference<Map<String, Object>>() {})))
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("No response from Gemini API")))
+                // The cache write below goes to Mongo
+                .publishOn(blockingScheduler)
+                .map(response -> {
+                    if (response.getBody() == null) {
+                        throw new RuntimeException("No response from Gemini API");
+                    }
 
-            System.out.println("✅ Gemini API Response Status: " + response.getStatusCode());
-            System.out.println("📥 Response body: " + response.getBody());
+                    System.out.println("✅ Gemini API Response Status: " + response.getStatusCode());
+                    System.out.println("📥 Response body: " + response.getBody());
 
-            // Extract text from Gemini response
-            String responseText = extractTextFromGeminiResponse(response.getBody());
-            System.out.println("📄 Extracted text: " + responseText);
-            
-            // Parse JSON from response text
-            return parseIngredientsFromText(responseText);
+                    // Extract text from Gemini response
+                    String responseText = extractTextFromGeminiResponse(response.getBody());
+                    System.out.println("📄 Extracted text: " + responseText);
+                    
+                    // Parse JSON from response text
+                    List<String> ingredients = parseIngredientsFromText(responseText);
+                    // An empty result may be a bad photo; let a retry reach the model
+                    if (!ingredients.isEmpty()) {
+                        receiptExtractionCache.put(extraction.cacheKey(), prepared.perceptualHash(), ingredients);
+                    }
+                    return ingredients;
+                })
+                // Rejections pass through as they are, so the caller can answer 503 with Retry-After
+                .onErrorMap(e -> !(e instanceof UpstreamRejectedException), e -> {
+                    e.printStackTrace();
+                    return new RuntimeException("Error calling Gemini API: " + e.getMessage());
+                });
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException("Error calling Gemini API: " + e.getMessage());
-        }
+    // Padded base64 turns every started group of three bytes into four characters
+    static long inlineImageContentLength(byte[] head, ReceiptImage image, byte[] tail) {
+        return head.length + 4 * ((image.size() + 2) / 3) + tail.length;
+    }
+
+    /**
+     * Writes the request body as it is sent: the JSON around the image is written as-is and
+     * the image is base64-encoded straight from its stream into small outgoing buffers. An
+     * upload is never held in memory whole, let alone as a base64 String and again as JSON.
+     */
+    static Publisher<DataBuffer> inlineImageBody(byte[] head, ReceiptImage image, byte[] tail, Executor bodyWriter) {
+        return DataBufferUtils.outputStreamPublisher(out -> {
+            try (InputStream in = image.source().getInputStream()) {
+                out.write(head);
+                // Closing the encoder writes the final padding, but must leave the body open
+                try (OutputStream base64 = Base64.getEncoder().wrap(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                })) {
+                    in.transferTo(base64);
+                }
+                out.write(tail);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, DefaultDataBufferFactory.sharedInstance, bodyWriter, BODY_CHUNK_SIZE);
     }
 
     private String extractTextFromGeminiResponse(Map<String, Object> responseBody) {
@@ -136,6 +252,30 @@ public class GeminiService {
         }
     }
 
+    // A streamed chunk carries the next piece of text; the last one may only carry the finish reason
+    @SuppressWarnings("unchecked")
+    private String extractStreamedText(Map<String, Object> chunk) {
+        List<Map<String, Object>> candidates = (List<Map<String, Object>>) chunk.get("candidates");
+        if (candidates == null || candidates.isEmpty()) {
+            if (chunk.get("promptFeedback") instanceof Map<?, ?> feedback && feedback.get("blockReason") != null) {
+                throw new RuntimeException("Prompt blocked: " + feedback.get("blockReason"));
+            }
+            return "";
+        }
+        Map<String, Object> content = (Map<String, Object>) candidates.get(0).get("content");
+        List<Map<String, Object>> parts = content == null ? null : (List<Map<String, Object>>) content.get("parts");
+        if (parts == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map<String, Object> part : parts) {
+            if (part.get("text") != null) {
+                text.append(part.get("text"));
+            }
+        }
+        return text.toString();
+    }
+
     private List<String> parseIngredientsFromText(String text) {
         try {
             // Remove markdown code blocks if present
@@ -170,7 +310,67 @@ public class GeminiService {
         }
     }
 
-    public String generateRecipes(List<String> ingredients) {
+    /**
+     * Markdown recipes for the ingredients. Cached per canonical pantry, and concurrent
+     * requests for the same pantry share one model call. Fails with an
+     * {@link UpstreamRejectedException} when the call is turned away without reaching Gemini,
+     * so the caller can fall back, and with the call's own error otherwise.
+     */
+    public Mono<String> generateRecipes(List<String> ingredients) {
+        return recipeGenerationCache.get(recipeCacheKey(ingredients), () -> requestRecipes(ingredients));
+    }
+
+    /**
+     * The same recipes as {@link #generateRecipes}, as Markdown fragments in the order the
+     * model writes them, from Gemini's streaming endpoint. A pantry that is already cached
+     * comes back as one fragment; a completed stream is cached for both methods. Identical
+     * streams running at once share one model call.
+     */
+    public Flux<String> streamRecipes(List<String> ingredients) {
+        return recipeGenerationCache.stream(recipeCacheKey(ingredients), () -> {
+            URI uri = UriComponentsBuilder
+                    .fromUriString("https://generativelanguage.googleapis.com/v1beta/models/" + MODEL_NAME + ":streamGenerateContent")
+                    .queryParam("alt", "sse")
+                    .queryParam("key", apiKey)
+                    .build()
+                    .toUri();
+
+            return circuitBreaker.stream(() -> generationBulkhead.stream(() -> webClient.post()
+                            .uri(uri)
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .bodyValue(recipeRequestBody(ingredients))
+                            .retrieve()
+                            .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<Map<String, Object>>>() {})))
+                    .mapNotNull(ServerSentEvent::data)
+                    .map(this::extractStreamedText)
+                    .filter(text -> !text.isEmpty());
+        });
+    }
+
+    // Shared by the whole and the streamed generation, so each can serve the other's cached answer
+    private static String recipeCacheKey(List<String> ingredients) {
+        return RecipeGenerationCache.key(MODEL_NAME + "/recipes-v" + RECIPE_PROMPT_VERSION, ingredients);
+    }
+
+    // Fails rather than returning an error message, so errors are never cached
+    private Mono<String> requestRecipes(List<String> ingredients) {
+        URI uri = UriComponentsBuilder
+                .fromUriString("https://generativelanguage.googleapis.com/v1beta/models/" + MODEL_NAME + ":generateContent")
+                .queryParam("key", apiKey)
+                .build()
+                .toUri();
+        
+        return circuitBreaker.run(() -> generationBulkhead.run(() -> webClient.post()
+                        .uri(uri)
+                        .bodyValue(recipeRequestBody(ingredients))
+                        .retrieve()
+                        .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})))
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("No response from Gemini API")))
+                .map(this::extractTextFromGeminiResponse);
+    }
+
+    // Shared by the whole and the streamed generation, so both give the same recipes
+    private static Map<String, Object> recipeRequestBody(List<String> ingredients) {
         String ingredientText = String.join(", ", ingredients);
 
         String prompt = "Create 3 simple, budget-friendly recipes using these ingredients: " + ingredientText + ".\n\n" +
@@ -181,7 +381,7 @@ public class GeminiService {
                 "- Estimated prep time and cook time\n\n" +
                 "Format the response in clean Markdown with headers (##) for each recipe.";
 
-        Map<String, Object> requestBody = Map.of(
+        return Map.of(
                 "contents", List.of(
                         Map.of(
                                 "parts", List.of(
@@ -190,29 +390,5 @@ public class GeminiService {
                         )
                 )
         );
-
-        try {
-            URI uri = UriComponentsBuilder
-                    .fromUriString("https://generativelanguage.googleapis.com/v1beta/models/" + MODEL_NAME + ":generateContent")
-                    .queryParam("key", apiKey)
-                    .build()
-                    .toUri();
-            
-            ResponseEntity<Map<String, Object>> response = webClient.post()
-                    .uri(uri)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .toEntity(new ParameterizedTypeReference<Map<String, Object>>() {})
-                    .block();
-
-            if (response == null || response.getBody() == null) {
-                return "Error: No response from Gemini API";
-            }
-
-            return extractTextFromGeminiResponse(response.getBody());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "Error generating recipes: " + e.getMessage();
-        }
     }
 }
\ No newline at end of file
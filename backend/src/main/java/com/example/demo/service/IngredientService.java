@@ -1,24 +1,61 @@
 package com.example.demo.service;
 
 import com.example.demo.model.Ingredient;
+import com.example.demo.model.IngredientPage;
+import com.example.demo.limit.UpstreamRejectedException;
 import com.example.demo.repository.IngredientRepository;
+import com.example.demo.repository.KeysetCursor;
+import com.example.demo.search.IngredientCanonicalizer;
+import com.example.demo.search.IngredientDictionary;
+import com.example.demo.search.IngredientSearchIndex;
+import com.example.demo.search.IngredientSuggestIndex;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class IngredientService {
     
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int DEFAULT_SUGGESTIONS = 10;
+    public static final int MAX_SUGGESTIONS = 50;
+    
     private final IngredientRepository ingredientRepository;
     private final GeminiService geminiService;
+    private final IngredientSearchIndex ingredientSearchIndex;
+    private final IngredientSuggestIndex ingredientSuggestIndex;
+    private final IngredientDictionary ingredientDictionary;
+    private final Scheduler blockingScheduler;
+    
+    /** Returns one page of all ingredients in _id order; the cursor is the last id of the previous page. */
+    public IngredientPage getIngredientsPage(int limit, String after) {
+        int pageSize = limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        KeysetCursor cursor = KeysetCursor.decode(after);
+        // One extra row tells us whether there is a next page
+        Limit fetch = Limit.of(pageSize + 1);
+        List<Ingredient> rows = cursor == null
+                ? ingredientRepository.findAllByOrderByIdAsc(fetch)
+                : ingredientRepository.findByIdGreaterThanOrderByIdAsc(cursor.id(), fetch);
+        if (rows.size() <= pageSize) {
+            return new IngredientPage(rows, null);
+        }
+        List<Ingredient> page = new ArrayList<>(rows.subList(0, pageSize));
+        return new IngredientPage(page, new KeysetCursor(page.get(pageSize - 1).getId()).encode());
+    }
     
-    public List<Ingredient> getAllIngredients() {
-        return ingredientRepository.findAll();
+    /** Every ingredient, read lazily from a Mongo cursor. The caller must close the stream. */
+    public Stream<Ingredient> streamAllIngredients() {
+        return ingredientRepository.streamAllBy();
     }
     
     public Ingredient getIngredientById(String id) {
@@ -26,68 +63,163 @@ public class IngredientService {
         return ingredient.orElse(null);
     }
     
-    public Map<String, Object> detectIngredients(MultipartFile image) throws IOException {
-        try {
-            // Get ingredient names from Gemini
-            List<String> detectedIngredientNames = geminiService.extractIngredientsFromImage(image);
-            
-            if (detectedIngredientNames.isEmpty()) {
-                return Map.of(
-                    "success", false,
-                    "message", "No food ingredients detected in the image",
-                    "ingredients", Collections.emptyList()
-                );
+    public Mono<Map<String, Object>> detectIngredients(MultipartFile image) {
+        // Get ingredient names from Gemini
+        return geminiService.extractIngredientsFromImage(image)
+                // Resolving them against the ingredients collection blocks
+                .publishOn(blockingScheduler)
+                .map(this::saveDetectedIngredients)
+                // Rejections reach the controller, which answers them with 503 and Retry-After
+                .onErrorResume(e -> !(e instanceof UpstreamRejectedException), e -> {
+                    e.printStackTrace();
+                    return Mono.just(Map.of(
+                        "success", false,
+                        "error", String.valueOf(e.getMessage()),
+                        "message", "Failed to detect ingredients: " + e.getMessage()
+                    ));
+                });
+    }
+    
+    private Map<String, Object> saveDetectedIngredients(List<String> detectedIngredientNames) {
+        if (detectedIngredientNames.isEmpty()) {
+            return Map.of(
+                "success", false,
+                "message", "No food ingredients detected in the image",
+                "ingredients", Collections.emptyList()
+            );
+        }
+        
+        // Known ingredients, including misspellings of them, resolve in memory; the rest
+        // are created with one bulk insert
+        Map<String, String> normalizedNames = new LinkedHashMap<>();
+        for (String ingredientName : detectedIngredientNames) {
+            normalizedNames.put(ingredientName, IngredientCanonicalizer.canonicalizeOrLiteral(ingredientName));
+        }
+        Map<String, Ingredient> byNormalizedName = new HashMap<>();
+        Map<String, Ingredient> missing = new LinkedHashMap<>();
+        normalizedNames.forEach((ingredientName, normalizedName) -> {
+            if (normalizedName.isEmpty() || byNormalizedName.containsKey(normalizedName)) {
+                return;
             }
-            
-            List<Ingredient> savedIngredients = new ArrayList<>();
-            
-            for (String ingredientName : detectedIngredientNames) {
-                List<Ingredient> existing = ingredientRepository.findByNameContaining(ingredientName);
-                
-                if (existing.isEmpty()) {
-                    Ingredient newIngredient = new Ingredient();
-                    newIngredient.setName(ingredientName);
-                    newIngredient.setCategory("detected");
-                    newIngredient.setDetectedFromImage(true);
-                    newIngredient.setCreatedAt(LocalDateTime.now());
-                    newIngredient.setUpdatedAt(LocalDateTime.now());
-                    
-                    Ingredient saved = ingredientRepository.save(newIngredient);
-                    savedIngredients.add(saved);
-                } else {
-                    savedIngredients.add(existing.get(0));
+            Ingredient known = ingredientDictionary.find(normalizedName);
+            if (known != null) {
+                byNormalizedName.put(normalizedName, known);
+            } else {
+                missing.computeIfAbsent(normalizedName, n -> newDetectedIngredient(ingredientName, n));
+            }
+        });
+        if (!missing.isEmpty()) {
+            List<Ingredient> inserted = ingredientRepository.insertAllSkippingDuplicates(new ArrayList<>(missing.values()));
+            List<Ingredient> created = new ArrayList<>(inserted);
+            if (inserted.size() < missing.size()) {
+                // Another upload or node created some of them first; use its documents
+                Set<String> lost = new HashSet<>(missing.keySet());
+                for (Ingredient ingredient : inserted) {
+                    lost.remove(ingredient.getNormalizedName());
+                }
+                for (Ingredient ingredient : ingredientRepository.findByNormalizedNameIn(lost)) {
+                    Ingredient local = ingredientDictionary.find(ingredient.getNormalizedName());
+                    if (local != null && ingredient.getId().equals(local.getId())) {
+                        // Created by another upload on this node, which already indexed it
+                        byNormalizedName.put(ingredient.getNormalizedName(), ingredient);
+                    } else {
+                        created.add(ingredient);
+                    }
                 }
             }
             
-            return Map.of(
-                "success", true,
-                "message", "Detected " + savedIngredients.size() + " ingredients",
-                "ingredients", savedIngredients,
-                "ingredientNames", detectedIngredientNames
-            );
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Map.of(
-                "success", false,
-                "error", e.getMessage(),
-                "message", "Failed to detect ingredients: " + e.getMessage()
-            );
+            List<String> createdNames = new ArrayList<>(created.size());
+            for (Ingredient ingredient : created) {
+                byNormalizedName.put(ingredient.getNormalizedName(), ingredient);
+                ingredientSearchIndex.index(ingredient);
+                ingredientDictionary.put(ingredient);
+                createdNames.add(ingredient.getName());
+            }
+            ingredientSuggestIndex.addAll(createdNames);
+        }
+        
+        List<Ingredient> savedIngredients = new ArrayList<>();
+        for (String normalizedName : normalizedNames.values()) {
+            Ingredient ingredient = byNormalizedName.get(normalizedName);
+            if (ingredient != null) {
+                savedIngredients.add(ingredient);
+            }
         }
+        
+        return Map.of(
+            "success", true,
+            "message", "Detected " + savedIngredients.size() + " ingredients",
+            "ingredients", savedIngredients,
+            "ingredientNames", detectedIngredientNames
+        );
+    }
+    
+    /** Typeahead: canonical ingredient names with a word starting with the prefix, most used first. */
+    public List<String> suggestIngredients(String prefix, int limit) {
+        int size = limit <= 0 ? DEFAULT_SUGGESTIONS : Math.min(limit, MAX_SUGGESTIONS);
+        return ingredientSuggestIndex.suggest(prefix, size);
+    }
+    
+    private static Ingredient newDetectedIngredient(String name, String normalizedName) {
+        Ingredient ingredient = new Ingredient();
+        ingredient.setName(name);
+        ingredient.setNormalizedName(normalizedName);
+        ingredient.setCategory("detected");
+        ingredient.setDetectedFromImage(true);
+        ingredient.setCreatedAt(LocalDateTime.now());
+        ingredient.setUpdatedAt(LocalDateTime.now());
+        return ingredient;
     }
     
     public List<Ingredient> searchIngredients(String query) {
-        return ingredientRepository.findByNameContaining(query);
+        return findByNameContaining(query);
+    }
+
+    // Case-insensitive substring match on the name, answered by the trigram index
+    private List<Ingredient> findByNameContaining(String query) {
+        List<String> ids = ingredientSearchIndex.search(query);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Ingredient> byId = new HashMap<>();
+        for (Ingredient ingredient : ingredientRepository.findAllById(ids)) {
+            byId.put(ingredient.getId(), ingredient);
+        }
+        List<Ingredient> ordered = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Ingredient ingredient = byId.get(id);
+            if (ingredient != null) {
+                ordered.add(ingredient);
+            }
+        }
+        return ordered;
     }
     
     public List<Ingredient> getIngredientsByCategory(String category) {
         return ingredientRepository.findByCategory(category);
     }
     
+    /**
+     * Creates the ingredient. Throws {@link DuplicateIngredientException} if its name
+     * normalizes to an existing ingredient's ("Tomatoes" vs "tomato"), rather than returning
+     * that one and dropping the category and image given here.
+     */
     public Ingredient createIngredient(Ingredient ingredient) {
         ingredient.setCreatedAt(LocalDateTime.now());
         ingredient.setUpdatedAt(LocalDateTime.now());
-        return ingredientRepository.save(ingredient);
+        ingredient.setNormalizedName(normalizedNameOf(ingredient));
+        Ingredient saved;
+        try {
+            saved = ingredientRepository.save(ingredient);
+        } catch (DuplicateKeyException e) {
+            throw duplicateOf(ingredient);
+        }
+        ingredientSearchIndex.index(saved);
+        ingredientDictionary.put(saved);
+        if (saved.getName() != null) {
+            ingredientSuggestIndex.addAll(List.of(saved.getName()));
+        }
+        return saved;
     }
     
     public Ingredient updateIngredient(String id, Ingredient ingredient) {
@@ -97,14 +229,53 @@ public class IngredientService {
             ingredient.setId(id);
             ingredient.setCreatedAt(existingIngredient.getCreatedAt());
             ingredient.setUpdatedAt(LocalDateTime.now());
-            return ingredientRepository.save(ingredient);
+            ingredient.setNormalizedName(normalizedNameOf(ingredient));
+            Ingredient saved;
+            try {
+                saved = ingredientRepository.save(ingredient);
+            } catch (DuplicateKeyException e) {
+                throw duplicateOf(ingredient);
+            }
+            ingredientSearchIndex.index(saved);
+            ingredientDictionary.put(saved);
+            if (!Objects.equals(existingIngredient.getNormalizedName(), saved.getNormalizedName())) {
+                // Renamed: suggest the new name instead of the old one
+                if (existingIngredient.getName() != null) {
+                    ingredientSuggestIndex.removeAll(List.of(existingIngredient.getName()));
+                }
+                if (saved.getName() != null) {
+                    ingredientSuggestIndex.addAll(List.of(saved.getName()));
+                }
+            }
+            return saved;
         }
         return null;
     }
     
+    private DuplicateIngredientException duplicateOf(Ingredient ingredient) {
+        List<Ingredient> existing = ingredientRepository.findByNormalizedNameIn(List.of(ingredient.getNormalizedName()));
+        return new DuplicateIngredientException("Another ingredient is already named " + ingredient.getName(),
+                existing.isEmpty() ? null : existing.get(0));
+    }
+    
+    // Null for a missing name: the unique index is sparse, so unnamed ingredients don't collide
+    private static String normalizedNameOf(Ingredient ingredient) {
+        if (ingredient.getName() == null) {
+            return null;
+        }
+        String normalizedName = IngredientCanonicalizer.canonicalizeOrLiteral(ingredient.getName());
+        return normalizedName.isEmpty() ? null : normalizedName;
+    }
+    
     public boolean deleteIngredient(String id) {
-        if (ingredientRepository.existsById(id)) {
+        Optional<Ingredient> existing = ingredientRepository.findById(id);
+        if (existing.isPresent()) {
             ingredientRepository.deleteById(id);
+            ingredientSearchIndex.remove(id);
+            ingredientDictionary.remove(id);
+            if (existing.get().getName() != null) {
+                ingredientSuggestIndex.removeAll(List.of(existing.get().getName()));
+            }
             return true;
         }
         return false;
@@ -1,24 +1,75 @@
 package com.example.demo.service;
 
+import com.example.demo.cache.RecentRecipesBuffer;
+import com.example.demo.limit.UpstreamRejectedException;
 import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipeFilterRequest;
+import com.example.demo.model.RecipePage;
+import com.example.demo.repository.KeysetCursor;
+import com.example.demo.repository.RecentCursor;
 import com.example.demo.repository.RecipeRepository;
+import com.example.demo.search.CanonicalIngredientRegistry;
+import com.example.demo.search.PopularRecipesLeaderboard;
+import com.example.demo.search.RecipeSearchIndex;
+import com.example.demo.search.ScoreCursor;
+import com.example.demo.search.SearchCursor;
+import com.example.demo.search.SearchPage;
+import com.example.demo.search.SearchResultCache;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class RecipeService {
     
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+    // As many as the model is asked to generate
+    private static final int FALLBACK_RECIPES = 3;
+    
     private final RecipeRepository recipeRepository;
     private final GeminiService geminiService;
+    private final RecipeSearchIndex recipeSearchIndex;
+    private final SearchResultCache searchResultCache;
+    private final CanonicalIngredientRegistry canonicalIngredientRegistry;
+    private final RecentRecipesBuffer recentRecipesBuffer;
+    private final PopularRecipesLeaderboard popularRecipesLeaderboard;
+    private final Scheduler blockingScheduler;
     
-    public List<Recipe> getAllRecipes() {
-        return recipeRepository.findAll();
+    /**
+     * Returns one page of all recipes in _id order. The cursor is the last id of the
+     * previous page, so each page is an index seek regardless of how deep it is.
+     */
+    public RecipePage getRecipesPage(int limit, String after) {
+        int pageSize = clampPageSize(limit);
+        KeysetCursor cursor = KeysetCursor.decode(after);
+        // One extra row tells us whether there is a next page
+        Limit fetch = Limit.of(pageSize + 1);
+        List<Recipe> rows = cursor == null
+                ? recipeRepository.findAllByOrderByIdAsc(fetch)
+                : recipeRepository.findByIdGreaterThanOrderByIdAsc(cursor.id(), fetch);
+        if (rows.size() <= pageSize) {
+            return new RecipePage(rows, null);
+        }
+        List<Recipe> page = new ArrayList<>(rows.subList(0, pageSize));
+        return new RecipePage(page, new KeysetCursor(page.get(pageSize - 1).getId()).encode());
+    }
+    
+    /** Every recipe, read lazily from a Mongo cursor. The caller must close the stream. */
+    public Stream<Recipe> streamAllRecipes() {
+        return recipeRepository.streamAllBy();
     }
     
     public Recipe getRecipeById(String id) {
@@ -27,110 +78,141 @@ public class RecipeService {
     }
     
     public List<Recipe> searchRecipesByIngredients(List<String> ingredients) {
-        // If the client omits the body (null), treat as request for all recipes.
+        return searchRecipesByIngredients(ingredients, DEFAULT_PAGE_SIZE, null).getRecipes();
+    }
+    
+    public RecipePage searchRecipesByIngredients(List<String> ingredients, int limit, String cursor) {
+        // If the client omits the body (null), treat as request for all recipes, paged like GET /api/recipes.
         // If the client sends an explicit empty list, return no results (avoid returning all accidentally).
         if (ingredients == null) {
-            return getAllRecipes();
+            return getRecipesPage(limit, cursor);
         }
         if (ingredients.isEmpty()) {
-            return List.of();
+            return new RecipePage(List.of(), null);
         }
         
         // Fuzzy search: case-insensitive substring match against recipe ingredients
         List<String> queries = ingredients.stream()
                 .filter(s -> s != null && !s.isBlank())
-                .map(String::toLowerCase)
                 .toList();
 
         if (queries.isEmpty()) {
             // all queries were blank strings (e.g. ["", " "]) — return no results
-            return List.of();
+            return new RecipePage(List.of(), null);
+        }
+
+        // The index ranks recipes by number of matching ingredients and keeps only one page;
+        // only that page is loaded from Mongo
+        int pageSize = clampPageSize(limit);
+        String cacheKey = searchResultCache.searchKey(queries, pageSize, cursor);
+        RecipePage cached = searchResultCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
         }
+        SearchPage page = recipeSearchIndex.search(queries, pageSize, SearchCursor.decode(cursor));
+        RecipePage result = new RecipePage(findAllByIdInOrder(page.ids()), page.nextCursor());
+        searchResultCache.put(cacheKey, result);
+        return result;
+    }
 
-        // Compute a match count for each recipe and sort by descending matches
-        List<Recipe> allRecipes = getAllRecipes();
+    private static int clampPageSize(int limit) {
+        if (limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
 
-        // Precompute counts to avoid repeated work in comparator
-        java.util.Map<String, Integer> recipeMatchCounts = new java.util.HashMap<>();
-        for (Recipe recipe : allRecipes) {
-            int count = 0;
-            if (recipe.getIngredients() != null) {
-                for (String ing : recipe.getIngredients()) {
-                    if (ing == null) continue;
-                    String ingLower = ing.toLowerCase();
-                    for (String q : queries) {
-                        if (ingLower.contains(q)) {
-                            count++;
-                            break; // count this ingredient once even if multiple queries match
-                        }
-                    }
-                }
+    private List<Recipe> findAllByIdInOrder(List<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Recipe> byId = new HashMap<>();
+        for (Recipe recipe : recipeRepository.findAllById(ids)) {
+            byId.put(recipe.getId(), recipe);
+        }
+        List<Recipe> ordered = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Recipe recipe = byId.get(id);
+            if (recipe != null) {
+                ordered.add(recipe);
             }
-            recipeMatchCounts.put(recipe.getId() != null ? recipe.getId() : recipe.getTitle(), count);
         }
-
-        // Keep only recipes with at least one matching ingredient, then sort by match count descending
-        return allRecipes.stream()
-            .filter(r -> recipeMatchCounts.getOrDefault(r.getId() != null ? r.getId() : r.getTitle(), 0) > 0)
-            .sorted((r1, r2) -> Integer.compare(
-                recipeMatchCounts.getOrDefault(r2.getId() != null ? r2.getId() : r2.getTitle(), 0),
-                recipeMatchCounts.getOrDefault(r1.getId() != null ? r1.getId() : r1.getTitle(), 0)
-            ))
-            .toList();
+        return ordered;
     }
 
-    public String generateRecipesFromAI(List<String> ingredients) {
-        return geminiService.generateRecipes(ingredients);
+    /**
+     * Generated recipes, or the best matches from the collection when the call is turned
+     * away without reaching Gemini: its circuit is open or its bulkhead is full.
+     */
+    public Mono<String> generateRecipesFromAI(List<String> ingredients) {
+        return geminiService.generateRecipes(ingredients)
+                .onErrorResume(UpstreamRejectedException.class, e -> fallbackRecipes(ingredients));
     }
     
-    public List<Recipe> searchRecipesWithFilters(Map<String, Object> filters) {
-        List<Recipe> allRecipes = getAllRecipes();
-        
-        return allRecipes.stream()
-                .filter(recipe -> {
-                    // Filter by max calories
-                    if (filters.containsKey("maxCalories")) {
-                        Double maxCalories = (Double) filters.get("maxCalories");
-                        if (recipe.getNutrition() != null && recipe.getNutrition().getCalories() > maxCalories) {
-                            return false;
-                        }
-                    }
-                    
-                    // Filter by min protein
-                    if (filters.containsKey("minProtein")) {
-                        Double minProtein = (Double) filters.get("minProtein");
-                        if (recipe.getNutrition() != null && recipe.getNutrition().getProtein() < minProtein) {
-                            return false;
-                        }
-                    }
-                    
-                    // Filter by diet type
-                    if (filters.containsKey("dietType")) {
-                        String dietType = (String) filters.get("dietType");
-                        if (recipe.getTags() == null || !recipe.getTags().contains(dietType.toLowerCase())) {
-                            return false;
-                        }
-                    }
-                    
-                    // Filter by max prep time
-                    if (filters.containsKey("maxPrepTime")) {
-                        Integer maxPrepTime = (Integer) filters.get("maxPrepTime");
-                        if (recipe.getPrepTimeMinutes() != null && recipe.getPrepTimeMinutes() > maxPrepTime) {
-                            return false;
-                        }
-                    }
-                    
-                    // Filter by max cook time
-                    if (filters.containsKey("maxCookTime")) {
-                        Integer maxCookTime = (Integer) filters.get("maxCookTime");
-                        if (recipe.getCookTimeMinutes() != null && recipe.getCookTimeMinutes() > maxCookTime) {
-                            return false;
-                        }
-                    }
-                    
-                    return true;
-                })
-                .toList();
+    public Flux<String> streamRecipesFromAI(List<String> ingredients) {
+        return geminiService.streamRecipes(ingredients)
+                .onErrorResume(UpstreamRejectedException.class, e -> fallbackRecipes(ingredients).flux());
+    }
+    
+    // Answered from the search index and Mongo, so it stays fast whatever Gemini is doing
+    private Mono<String> fallbackRecipes(List<String> ingredients) {
+        return Mono.fromCallable(() -> toMarkdown(searchRecipesByIngredients(ingredients, FALLBACK_RECIPES, null).getRecipes()))
+                .subscribeOn(blockingScheduler);
+    }
+    
+    // Same shape as the generated Markdown: one ## section per recipe
+    private static String toMarkdown(List<Recipe> recipes) {
+        StringBuilder markdown = new StringBuilder();
+        if (recipes.isEmpty()) {
+            return markdown.append("> Recipe generation is temporarily unavailable, and none of our saved recipes ")
+                    .append("use these ingredients. Please try again in a minute.\n").toString();
+        }
+        markdown.append("> Recipe generation is temporarily unavailable. ")
+                .append("Here are the closest matches from our recipe collection.\n");
+        for (Recipe recipe : recipes) {
+            markdown.append("\n## ").append(recipe.getTitle() != null ? recipe.getTitle() : "Untitled recipe").append("\n\n");
+            if (recipe.getDescription() != null && !recipe.getDescription().isBlank()) {
+                markdown.append(recipe.getDescription()).append("\n\n");
+            }
+            if (recipe.getPrepTimeMinutes() != null || recipe.getCookTimeMinutes() != null) {
+                markdown.append("**Prep time:** ").append(minutes(recipe.getPrepTimeMinutes()))
+                        .append(" | **Cook time:** ").append(minutes(recipe.getCookTimeMinutes())).append("\n\n");
+            }
+            if (recipe.getIngredients() != null && !recipe.getIngredients().isEmpty()) {
+                markdown.append("### Ingredients\n");
+                for (String ingredient : recipe.getIngredients()) {
+                    markdown.append("- ").append(ingredient).append("\n");
+                }
+                markdown.append("\n");
+            }
+            if (recipe.getInstructions() != null && !recipe.getInstructions().isEmpty()) {
+                markdown.append("### Instructions\n");
+                int step = 1;
+                for (String instruction : recipe.getInstructions()) {
+                    markdown.append(step++).append(". ").append(instruction).append("\n");
+                }
+            }
+        }
+        return markdown.toString();
+    }
+    
+    private static String minutes(Integer value) {
+        return value == null ? "-" : value + " min";
+    }
+    
+    public List<Recipe> searchRecipesWithFilters(RecipeFilterRequest filters) {
+        int limit = clampPageSize(filters.getLimit() != null ? filters.getLimit() : DEFAULT_PAGE_SIZE);
+        String cacheKey = searchResultCache.filterKey(filters, limit);
+        RecipePage cached = searchResultCache.get(cacheKey);
+        if (cached != null) {
+            return cached.getRecipes();
+        }
+        // Scan the in-memory columns once the index is up; until then let Mongo filter
+        List<Recipe> recipes = recipeSearchIndex.isLoaded()
+                ? findAllByIdInOrder(recipeSearchIndex.filter(filters, limit))
+                : recipeRepository.findWithFilters(filters, limit);
+        searchResultCache.put(cacheKey, new RecipePage(recipes, null));
+        return recipes;
     }
     
     public List<Recipe> getSavedRecipes() {
@@ -143,7 +225,11 @@ public class RecipeService {
             Recipe recipe = recipeOpt.get();
             recipe.setIsSaved(true);
             recipe.setUpdatedAt(LocalDateTime.now());
-            return recipeRepository.save(recipe);
+            Recipe saved = recipeRepository.save(recipe);
+            recentRecipesBuffer.replace(saved);
+            popularRecipesLeaderboard.update(saved);
+            searchResultCache.invalidate();
+            return saved;
         }
         return null;
     }
@@ -154,31 +240,50 @@ public class RecipeService {
             Recipe recipe = recipeOpt.get();
             recipe.setIsSaved(false);
             recipe.setUpdatedAt(LocalDateTime.now());
-            recipeRepository.save(recipe);
+            Recipe saved = recipeRepository.save(recipe);
+            recentRecipesBuffer.replace(saved);
+            popularRecipesLeaderboard.update(saved);
+            searchResultCache.invalidate();
             return true;
         }
         return false;
     }
     
-    public List<Recipe> getPopularRecipes() {
-        return recipeRepository.findByMinRating(4.0);
+    /** Returns one page of the popular recipes leaderboard, which is held in memory. */
+    public RecipePage getPopularRecipes(int limit, String after) {
+        return popularRecipesLeaderboard.page(clampPageSize(limit), ScoreCursor.decode(after));
     }
     
-    public List<Recipe> getRecentRecipes() {
-        return recipeRepository.findAll().stream()
-                .sorted((r1, r2) -> {
-                    LocalDateTime date1 = r1.getCreatedAt() != null ? r1.getCreatedAt() : LocalDateTime.MIN;
-                    LocalDateTime date2 = r2.getCreatedAt() != null ? r2.getCreatedAt() : LocalDateTime.MIN;
-                    return date2.compareTo(date1);
-                })
-                .limit(10)
-                .toList();
+    /**
+     * Returns one page of the newest recipes. The first page normally comes from the
+     * in-memory ring buffer; later pages seek the created_at index from the cursor.
+     */
+    public RecipePage getRecentRecipes(int limit, String after) {
+        int pageSize = clampPageSize(limit);
+        RecentCursor cursor = RecentCursor.decode(after);
+        // One extra row tells us whether there is a next page
+        List<Recipe> rows = cursor == null ? recentRecipesBuffer.newest(pageSize + 1) : null;
+        if (rows == null) {
+            rows = recipeRepository.findRecent(cursor, pageSize + 1);
+        }
+        if (rows.size() <= pageSize) {
+            return new RecipePage(rows, null);
+        }
+        List<Recipe> page = new ArrayList<>(rows.subList(0, pageSize));
+        Recipe last = page.get(pageSize - 1);
+        return new RecipePage(page, new RecentCursor(last.getCreatedAt(), last.getId()).encode());
     }
     
     public Recipe createRecipe(Recipe recipe) {
         recipe.setCreatedAt(LocalDateTime.now());
         recipe.setUpdatedAt(LocalDateTime.now());
-        return recipeRepository.save(recipe);
+        recipe.setIngredientIds(canonicalIngredientRegistry.internAll(recipe.getIngredients()));
+        Recipe saved = recipeRepository.save(recipe);
+        recipeSearchIndex.index(saved);
+        recentRecipesBuffer.add(saved);
+        popularRecipesLeaderboard.update(saved);
+        searchResultCache.invalidate();
+        return saved;
     }
     
     public Recipe updateRecipe(String id, Recipe recipe) {
@@ -188,14 +293,24 @@ public class RecipeService {
             recipe.setId(id);
             recipe.setCreatedAt(existingRecipe.getCreatedAt());
             recipe.setUpdatedAt(LocalDateTime.now());
-            return recipeRepository.save(recipe);
+            recipe.setIngredientIds(canonicalIngredientRegistry.internAll(recipe.getIngredients()));
+            Recipe saved = recipeRepository.save(recipe);
+            recipeSearchIndex.index(saved);
+            recentRecipesBuffer.replace(saved);
+            popularRecipesLeaderboard.update(saved);
+            searchResultCache.invalidate();
+            return saved;
         }
         return null;
     }
     
     public boolean deleteRecipe(String id) {
         if (recipeRepository.existsById(id)) {
-            recipeRepository.deleteById(id);
+            recipeRepository.deleteWithTombstone(id);
+            recipeSearchIndex.remove(id);
+            recentRecipesBuffer.invalidate();
+            popularRecipesLeaderboard.remove(id);
+            searchResultCache.invalidate();
             return true;
         }
         return false;
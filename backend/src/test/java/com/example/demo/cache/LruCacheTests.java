@@ -0,0 +1,81 @@
+package com.example.demo.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LruCacheTests {
+
+	@Test
+	void evictsLeastRecentlyUsedUntilTheWeightFits() {
+		LruCache<String, List<Integer>> cache = new LruCache<>(5, null, List::size);
+		cache.put("a", List.of(1, 2));
+		cache.put("b", List.of(1, 2));
+		// Reading a makes b the least recently used
+		cache.get("a");
+
+		cache.put("c", List.of(1, 2));
+
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.get("a")).isNotNull();
+		assertThat(cache.get("c")).isNotNull();
+		assertThat(cache.evictionCount()).isEqualTo(1);
+
+		// Replacing an entry re-weighs it rather than adding to the total
+		cache.put("a", List.of(1, 2, 3));
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.evictionCount()).isEqualTo(1);
+	}
+
+	@Test
+	void chargesEmptyValuesAndSkipsOnesThatCanNeverFit() {
+		LruCache<String, List<Integer>> cache = new LruCache<>(2, null, List::size);
+		cache.put("empty", List.of());
+		cache.put("huge", List.of(1, 2, 3));
+		cache.put("one", List.of(1));
+		cache.put("another", List.of());
+
+		assertThat(cache.get("huge")).isNull();
+		assertThat(cache.get("empty")).isNull();
+		assertThat(cache.get("one")).containsExactly(1);
+		assertThat(cache.get("another")).isEmpty();
+	}
+
+	@Test
+	void expiresEntriesAfterTheirTtl() {
+		AtomicLong clock = new AtomicLong();
+		LruCache<String, String> cache = new LruCache<>(10, Duration.ofMinutes(5), value -> 1, clock::get);
+		cache.put("key", "value");
+
+		clock.addAndGet(Duration.ofMinutes(5).toNanos());
+		assertThat(cache.get("key")).isEqualTo("value");
+		clock.incrementAndGet();
+		assertThat(cache.get("key")).isNull();
+		assertThat(cache.size()).isZero();
+	}
+
+	@Test
+	void countsHitsAndMissesAndPublishesThem() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		LruCache<String, String> cache = new LruCache<>(10, null, value -> 1);
+		cache.bindTo(registry, "test");
+		cache.put("key", "value");
+
+		cache.get("key");
+		cache.get("key");
+		cache.get("key");
+		cache.get("missing");
+
+		assertThat(cache.hitCount()).isEqualTo(3);
+		assertThat(cache.missCount()).isEqualTo(1);
+		assertThat(cache.hitRate()).isEqualTo(0.75);
+		assertThat(registry.get("cache.gets").tag("cache", "test").tag("result", "hit").functionCounter().count()).isEqualTo(3);
+		assertThat(registry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+		assertThat(registry.get("cache.size").tag("cache", "test").gauge().value()).isEqualTo(1);
+	}
+}
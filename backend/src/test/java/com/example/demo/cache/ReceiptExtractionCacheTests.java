@@ -0,0 +1,80 @@
+package com.example.demo.cache;
+
+import com.example.demo.model.ReceiptExtraction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReceiptExtractionCacheTests {
+
+	@Test
+	void answersExactAndNearIdenticalUploadsAndFallsBackToMongo() throws IOException {
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		ReceiptExtractionCache cache = new ReceiptExtractionCache(mongoTemplate, 100, Duration.ofDays(7), true, 6, new SimpleMeterRegistry());
+		String first = "model:" + ReceiptExtractionCache.contentHash(new MockMultipartFile("image", new byte[] {1, 2, 3}));
+		String recapture = "model:" + ReceiptExtractionCache.contentHash(new MockMultipartFile("image", new byte[] {4, 5, 6}));
+		String otherModel = "other:" + ReceiptExtractionCache.contentHash(new MockMultipartFile("image", new byte[] {7, 8, 9}));
+		assertThat(first).hasSize("model:".length() + 64);
+
+		cache.put(first, 0b1011_0000L, List.of("milk", "eggs"));
+		assertThat(cache.get(first)).containsExactly("milk", "eggs");
+		verify(mongoTemplate).save(any(ReceiptExtraction.class));
+
+		// Three bits apart: the same receipt photographed again
+		assertThat(cache.getSimilar(recapture, 0b1000_0011L)).containsExactly("milk", "eggs");
+		assertThat(cache.get(recapture)).containsExactly("milk", "eggs");
+		assertThat(cache.getSimilar(otherModel, 0b1011_0000L)).isNull();
+		assertThat(cache.getSimilar(recapture, -1L)).isNull();
+
+		// Only the second tier has it, e.g. after a restart
+		String persisted = "model:" + "ab".repeat(32);
+		when(mongoTemplate.findById(eq(persisted), eq(ReceiptExtraction.class)))
+				.thenReturn(new ReceiptExtraction(persisted, null, List.of("rice"), LocalDateTime.now().minusDays(1)));
+		assertThat(cache.get(persisted)).containsExactly("rice");
+		String expired = "model:" + "cd".repeat(32);
+		when(mongoTemplate.findById(eq(expired), eq(ReceiptExtraction.class)))
+				.thenReturn(new ReceiptExtraction(expired, null, List.of("rice"), LocalDateTime.now().minusDays(8)));
+		assertThat(cache.get(expired)).isNull();
+		verify(mongoTemplate, never()).findById(eq(first), eq(ReceiptExtraction.class));
+	}
+
+	@Test
+	void doesNotMergeDifferentReceiptsByDefault() throws IOException {
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		ReceiptExtractionCache cache = new ReceiptExtractionCache(mongoTemplate, 100, Duration.ofDays(7), false, 6, new SimpleMeterRegistry());
+		String mine = "model:" + ReceiptExtractionCache.contentHash(new MockMultipartFile("image", new byte[] {1, 2, 3}));
+		String strangers = "model:" + ReceiptExtractionCache.contentHash(new MockMultipartFile("image", new byte[] {4, 5, 6}));
+
+		// Two receipts from the same store: white paper, similar print, hashes a few bits apart
+		cache.put(strangers, 0b1011_0000L, List.of("milk", "eggs"));
+		assertThat(cache.getSimilar(mine, 0b1000_0011L)).isNull();
+		assertThat(cache.getSimilar(mine, 0b1011_0000L)).isNull();
+		assertThat(cache.get(mine)).isNull();
+		assertThat(cache.get(strangers)).containsExactly("milk", "eggs");
+	}
+
+	@Test
+	void doesNotMergeHashesBeyondTheThreshold() throws IOException {
+		ReceiptExtractionCache cache = new ReceiptExtractionCache(mock(MongoTemplate.class), 100, Duration.ofDays(7), true, 6, new SimpleMeterRegistry());
+		String first = "model:" + ReceiptExtractionCache.contentHash(new MockMultipartFile("image", new byte[] {1, 2, 3}));
+		String other = "model:" + ReceiptExtractionCache.contentHash(new MockMultipartFile("image", new byte[] {4, 5, 6}));
+
+		cache.put(first, 0L, List.of("milk", "eggs"));
+		assertThat(cache.getSimilar(other, 0b111_1111L)).isNull();
+		assertThat(cache.get(other)).isNull();
+	}
+}
@@ -0,0 +1,138 @@
+package com.example.demo.cache;
+
+import com.example.demo.model.Recipe;
+import com.example.demo.repository.RecipeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecentRecipesBufferTests {
+
+	private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	private final AtomicLong clock = new AtomicLong();
+	private RecipeRepository recipeRepository;
+
+	@BeforeEach
+	void setUp() {
+		recipeRepository = mock(RecipeRepository.class);
+	}
+
+	@Test
+	void bufferThatIsNotFullAnswersAnyLimit() {
+		when(recipeRepository.findRecent(null, 3)).thenReturn(List.of(recipe("b", 2), recipe("a", 1)));
+		RecentRecipesBuffer buffer = buffer(3);
+
+		assertThat(ids(buffer.newest(10))).containsExactly("b", "a");
+		assertThat(ids(buffer.newest(1))).containsExactly("b");
+	}
+
+	@Test
+	void fullBufferCannotAnswerMoreThanItHolds() {
+		when(recipeRepository.findRecent(null, 2)).thenReturn(List.of(recipe("b", 2), recipe("a", 1)));
+		RecentRecipesBuffer buffer = buffer(2);
+
+		assertThat(ids(buffer.newest(2))).containsExactly("b", "a");
+		assertThat(buffer.newest(3)).isNull();
+	}
+
+	@Test
+	void newRecipesGoInFrontAndPushOutTheOldest() {
+		when(recipeRepository.findRecent(null, 3)).thenReturn(List.of(recipe("c", 3), recipe("b", 2), recipe("a", 1)));
+		RecentRecipesBuffer buffer = buffer(3);
+		buffer.newest(1);
+
+		buffer.add(recipe("d", 4));
+		buffer.add(recipe("e", 5));
+
+		assertThat(ids(buffer.newest(3))).containsExactly("e", "d", "c");
+	}
+
+	@Test
+	void outOfOrderCreatesAreInsertedInFeedOrder() {
+		when(recipeRepository.findRecent(null, 4)).thenReturn(List.of(recipe("c", 3), recipe("a", 1)));
+		RecentRecipesBuffer buffer = buffer(4);
+		buffer.newest(1);
+
+		buffer.add(recipe("e", 5));
+		// Created before e but saved after it
+		buffer.add(recipe("d", 4));
+		buffer.add(recipe("b", 2));
+
+		assertThat(ids(buffer.newest(4))).containsExactly("e", "d", "c", "b");
+	}
+
+	@Test
+	void sameTimeOrdersByIdAndMissingTimeSortsLast() {
+		when(recipeRepository.findRecent(null, 4)).thenReturn(List.of(recipe("b", 1), recipe("z", null)));
+		RecentRecipesBuffer buffer = buffer(4);
+		buffer.newest(1);
+
+		buffer.add(recipe("c", 1));
+		buffer.add(recipe("y", null));
+
+		assertThat(ids(buffer.newest(4))).containsExactly("c", "b", "z", "y");
+	}
+
+	@Test
+	void recipeOlderThanAFullBufferIsLeftToMongo() {
+		when(recipeRepository.findRecent(null, 2)).thenReturn(List.of(recipe("c", 3), recipe("b", 2)));
+		RecentRecipesBuffer buffer = buffer(2);
+		buffer.newest(1);
+
+		buffer.add(recipe("a", 1));
+
+		assertThat(ids(buffer.newest(2))).containsExactly("c", "b");
+	}
+
+	@Test
+	void recipeAlreadyLoadedIsNotAddedTwice() {
+		when(recipeRepository.findRecent(null, 3)).thenReturn(List.of(recipe("b", 2), recipe("a", 1)));
+		RecentRecipesBuffer buffer = buffer(3);
+		buffer.newest(1);
+
+		buffer.add(recipe("b", 2));
+
+		assertThat(ids(buffer.newest(3))).containsExactly("b", "a");
+	}
+
+	@Test
+	void reloadsFromMongoOnceExpired() {
+		when(recipeRepository.findRecent(null, 3))
+				.thenReturn(List.of(recipe("a", 1)))
+				.thenReturn(List.of(recipe("imported", 2), recipe("a", 1)));
+		RecentRecipesBuffer buffer = buffer(3);
+
+		assertThat(ids(buffer.newest(3))).containsExactly("a");
+		clock.addAndGet(Duration.ofSeconds(59).toNanos());
+		assertThat(ids(buffer.newest(3))).containsExactly("a");
+		clock.addAndGet(Duration.ofSeconds(1).toNanos());
+		assertThat(ids(buffer.newest(3))).containsExactly("imported", "a");
+		verify(recipeRepository, times(2)).findRecent(null, 3);
+	}
+
+	private RecentRecipesBuffer buffer(int capacity) {
+		return new RecentRecipesBuffer(recipeRepository, capacity, Duration.ofMinutes(1), clock::get);
+	}
+
+	private static Recipe recipe(String id, Integer minute) {
+		Recipe recipe = new Recipe();
+		recipe.setId(id);
+		recipe.setCreatedAt(minute != null ? T0.plusMinutes(minute) : null);
+		return recipe;
+	}
+
+	private static List<String> ids(List<Recipe> recipes) {
+		return recipes.stream().map(Recipe::getId).toList();
+	}
+}
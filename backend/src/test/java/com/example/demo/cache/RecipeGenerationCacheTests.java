@@ -0,0 +1,99 @@
+package com.example.demo.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RecipeGenerationCacheTests {
+
+	@Test
+	void coalescesConcurrentCallsAndCachesOnlySuccesses() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		RecipeGenerationCache cache = new RecipeGenerationCache(10, Duration.ofHours(1), registry);
+		assertThat(RecipeGenerationCache.key("v1", List.of("Tomatoes", " eggs", "tomato")))
+				.isEqualTo(RecipeGenerationCache.key("v1", List.of("egg", "TOMATO")))
+				.isNotEqualTo(RecipeGenerationCache.key("v2", List.of("egg", "tomato")));
+
+		String key = RecipeGenerationCache.key("v1", List.of("egg", "tomato"));
+		AtomicInteger calls = new AtomicInteger();
+		Sinks.One<String> response = Sinks.one();
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			results.add(cache.get(key, () -> {
+				calls.incrementAndGet();
+				return response.asMono();
+			}).toFuture());
+		}
+		// The first request that goes away must not cancel the call the others wait for
+		results.get(0).cancel(true);
+		assertThat(registry.get("recipe.generation.coalesced").counter().count()).isEqualTo(7);
+
+		response.tryEmitValue("## Shakshuka");
+		for (CompletableFuture<String> result : results.subList(1, results.size())) {
+			assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("## Shakshuka");
+		}
+		assertThat(calls).hasValue(1);
+		assertThat(cache.get(key, () -> Mono.just("not called")).block()).isEqualTo("## Shakshuka");
+
+		String failing = RecipeGenerationCache.key("v1", List.of("rice"));
+		assertThatThrownBy(() -> cache.get(failing, () -> Mono.error(new IllegalStateException("quota exceeded"))).block())
+				.hasMessage("quota exceeded");
+		assertThat(cache.get(failing, () -> Mono.just("## Fried rice")).block()).isEqualTo("## Fried rice");
+	}
+
+	@Test
+	void supplierThatThrowsReleasesTheSlot() {
+		RecipeGenerationCache cache = new RecipeGenerationCache(10, Duration.ofHours(1), new SimpleMeterRegistry());
+		String key = RecipeGenerationCache.key("v1", List.of("egg"));
+
+		assertThatThrownBy(() -> cache.get(key, () -> {
+			throw new IllegalStateException("request could not be built");
+		}).block(Duration.ofSeconds(5))).hasMessage("request could not be built");
+		assertThat(cache.get(key, () -> Mono.just("## Omelette")).block(Duration.ofSeconds(5))).isEqualTo("## Omelette");
+	}
+
+	@Test
+	void sharesAStreamAndReplaysItToLateJoiners() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		RecipeGenerationCache cache = new RecipeGenerationCache(10, Duration.ofHours(1), registry);
+		String key = RecipeGenerationCache.key("v1", List.of("egg", "tomato"));
+		AtomicInteger calls = new AtomicInteger();
+		Sinks.Many<String> response = Sinks.many().unicast().onBackpressureBuffer();
+
+		List<String> first = new ArrayList<>();
+		cache.stream(key, () -> {
+			calls.incrementAndGet();
+			return response.asFlux();
+		}).subscribe(first::add);
+		response.tryEmitNext("## Shak");
+		List<String> late = new ArrayList<>();
+		cache.stream(key, () -> Flux.just("not called")).subscribe(late::add);
+		response.tryEmitNext("shuka");
+		response.tryEmitComplete();
+
+		assertThat(calls).hasValue(1);
+		assertThat(registry.get("recipe.generation.coalesced").counter().count()).isEqualTo(1);
+		assertThat(first).containsExactly("## Shak", "shuka");
+		assertThat(late).containsExactly("## Shak", "shuka");
+		assertThat(cache.stream(key, () -> Flux.just("not called")).collectList().block()).containsExactly("## Shakshuka");
+		assertThat(cache.get(key, () -> Mono.just("not called")).block()).isEqualTo("## Shakshuka");
+
+		String failing = RecipeGenerationCache.key("v1", List.of("rice"));
+		assertThatThrownBy(() -> cache.stream(failing, () -> Flux.error(new IllegalStateException("quota exceeded"))).blockLast())
+				.hasMessage("quota exceeded");
+		assertThat(cache.stream(failing, () -> Flux.just("## Fried", " rice")).collectList().block())
+				.containsExactly("## Fried", " rice");
+	}
+}
@@ -0,0 +1,71 @@
+package com.example.demo.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NdjsonResponsesTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@BeforeEach
+	void bindRequest() {
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+	}
+
+	@AfterEach
+	void unbindRequest() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	void writesOneParsableDocumentPerLine() throws Exception {
+		// More than one flush batch, so lines written after a flush are covered too
+		int count = 600;
+		AtomicBoolean closed = new AtomicBoolean();
+		ResponseEntity<StreamingResponseBody> response = NdjsonResponses.of(MAPPER,
+				() -> IntStream.range(0, count).mapToObj(i -> Map.of("a", i)).onClose(() -> closed.set(true)));
+
+		String body = write(response);
+
+		assertThat(response.getHeaders().getContentType()).hasToString(NdjsonResponses.APPLICATION_NDJSON_VALUE);
+		assertThat(body).endsWith("\n");
+		String[] lines = body.split("\n");
+		assertThat(lines).hasSize(count);
+		for (int i = 0; i < count; i++) {
+			assertThat(lines[i]).isEqualTo("{\"a\":" + i + "}");
+			JsonNode node = MAPPER.readTree(lines[i]);
+			assertThat(node.get("a").asInt()).isEqualTo(i);
+		}
+		assertThat(closed).isTrue();
+	}
+
+	@Test
+	void emptyStreamWritesNothing() throws Exception {
+		ResponseEntity<StreamingResponseBody> response = NdjsonResponses.of(MAPPER, Stream::empty);
+
+		assertThat(write(response)).isEmpty();
+	}
+
+	private static String write(ResponseEntity<StreamingResponseBody> response) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.getBody().writeTo(out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+}
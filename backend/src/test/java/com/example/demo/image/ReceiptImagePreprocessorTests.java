@@ -0,0 +1,94 @@
+package com.example.demo.image;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReceiptImagePreprocessorTests {
+
+	@Test
+	void shrinksToGrayscaleJpegAndAppliesExifOrientation() throws IOException {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		ReceiptImagePreprocessor preprocessor = new ReceiptImagePreprocessor(true, 400, 0.8f, 1, registry);
+		// Landscape as stored, tagged "rotate 90 degrees clockwise" like a phone held upright
+		byte[] upload = withOrientation(photo(2400, 1200), 6);
+
+		ReceiptImage prepared = preprocessor.prepare(new MockMultipartFile("image", "receipt.jpg", "image/jpeg", upload));
+
+		assertThat(prepared.mimeType()).isEqualTo("image/jpeg");
+		assertThat(prepared.size()).isLessThan(upload.length);
+		assertThat(prepared.perceptualHash()).isNotNull();
+		byte[] sent = prepared.source().getInputStream().readAllBytes();
+		assertThat(sent).hasSize((int) prepared.size());
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(sent));
+		assertThat(image.getWidth()).isEqualTo(200);
+		assertThat(image.getHeight()).isEqualTo(400);
+		assertThat(image.getColorModel().getNumComponents()).isEqualTo(1);
+		// Stored top-left ends up top-right once upright, stored bottom-left top-left
+		assertThat(image.getRaster().getSample(190, 10, 0)).isLessThan(128);
+		assertThat(image.getRaster().getSample(10, 10, 0)).isGreaterThan(200);
+
+		assertThat(registry.get("receipt.image.bytes").tag("stage", "uploaded").summary().totalAmount()).isEqualTo(upload.length);
+		assertThat(registry.get("receipt.image.bytes").tag("stage", "sent").summary().totalAmount()).isEqualTo(prepared.size());
+	}
+
+	@Test
+	void passesThroughWhatItCannotDecode() {
+		ReceiptImagePreprocessor preprocessor = new ReceiptImagePreprocessor(true, 400, 0.8f, 1, new SimpleMeterRegistry());
+		MockMultipartFile upload = new MockMultipartFile("image", "receipt.heic", "image/heic", new byte[] {1, 2, 3, 4});
+
+		ReceiptImage prepared = preprocessor.prepare(upload);
+
+		assertThat(prepared.source()).isSameAs(upload);
+		assertThat(prepared.size()).isEqualTo(4);
+		assertThat(prepared.mimeType()).isEqualTo("image/heic");
+		assertThat(prepared.perceptualHash()).isNull();
+	}
+
+	// Colored stripes with a dark red block in the top-left corner and a white one in the
+	// bottom-left, encoded as JPEG
+	private static byte[] photo(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, width, height);
+		for (int y = 0; y < height; y += 8) {
+			g.setColor(new Color(y % 256, (y * 7) % 256, (y * 13) % 256));
+			g.drawLine(0, y, width, y);
+		}
+		g.setColor(new Color(120, 0, 0));
+		g.fillRect(0, 0, 300, 300);
+		g.setColor(Color.WHITE);
+		g.fillRect(0, height - 200, 300, 200);
+		g.dispose();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpeg", out);
+		return out.toByteArray();
+	}
+
+	// Inserts a minimal big-endian EXIF segment holding only the orientation tag
+	private static byte[] withOrientation(byte[] jpeg, int orientation) {
+		byte[] exif = {
+				(byte) 0xFF, (byte) 0xE1, 0, 34,
+				'E', 'x', 'i', 'f', 0, 0,
+				'M', 'M', 0, 42, 0, 0, 0, 8,
+				0, 1,
+				0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+				0, 0, 0, 0};
+		byte[] out = new byte[jpeg.length + exif.length];
+		System.arraycopy(jpeg, 0, out, 0, 2);
+		System.arraycopy(exif, 0, out, 2, exif.length);
+		System.arraycopy(jpeg, 2, out, 2 + exif.length, jpeg.length - 2);
+		return out;
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.demo.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveBulkheadTests {
+
+	@Test
+	void queuesOverTheLimitAndRejectsBeyondTheQueue() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", 1, 1, 4, 1,
+				Duration.ofSeconds(5), Duration.ofSeconds(5));
+		bulkhead.bindTo(registry);
+		Sinks.One<String> first = Sinks.one();
+		AtomicInteger started = new AtomicInteger();
+
+		CompletableFuture<String> running = bulkhead.run(() -> {
+			started.incrementAndGet();
+			return first.asMono();
+		}).toFuture();
+		CompletableFuture<String> queued = bulkhead.run(() -> {
+			started.incrementAndGet();
+			return Mono.just("second");
+		}).toFuture();
+		CompletableFuture<String> rejected = bulkhead.run(() -> Mono.just("third")).toFuture();
+
+		assertThat(started).hasValue(1);
+		assertThat(bulkhead.queueDepth()).isEqualTo(1);
+		assertThatThrownBy(rejected::get).isInstanceOf(ExecutionException.class)
+				.hasCauseInstanceOf(BulkheadFullException.class);
+		assertThat(registry.get("gemini.bulkhead.rejected").tag("reason", "queue-full").functionCounter().count()).isEqualTo(1);
+
+		first.tryEmitValue("first");
+		assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+		assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("second");
+		assertThat(started).hasValue(2);
+		assertThat(bulkhead.active()).isZero();
+		// Both calls were fast while the single slot was in use
+		assertThat(bulkhead.limit()).isGreaterThan(1);
+	}
+
+	@Test
+	void halvesTheLimitOnOverloadAndTimesOutWaiters() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", 4, 1, 4, 10,
+				Duration.ofMillis(50), Duration.ofSeconds(5));
+		bulkhead.bindTo(registry);
+
+		WebClientResponseException tooManyRequests =
+				WebClientResponseException.create(HttpStatus.TOO_MANY_REQUESTS.value(), "Too Many Requests", null, null, null);
+		assertThatThrownBy(() -> bulkhead.run(() -> Mono.error(tooManyRequests)).block()).isSameAs(tooManyRequests);
+		assertThat(bulkhead.limit()).isEqualTo(2);
+		assertThat(registry.get("gemini.bulkhead.limit").tag("pool", "test").gauge().value()).isEqualTo(2);
+
+		Sinks.One<String> never = Sinks.one();
+		bulkhead.run(never::asMono).subscribe();
+		bulkhead.run(never::asMono).subscribe();
+		assertThatThrownBy(() -> bulkhead.run(() -> Mono.just("late")).block())
+				.isInstanceOf(BulkheadFullException.class);
+		assertThat(registry.get("gemini.bulkhead.rejected").tag("reason", "timeout").functionCounter().count()).isEqualTo(1);
+		assertThat(bulkhead.queueDepth()).isZero();
+	}
+}
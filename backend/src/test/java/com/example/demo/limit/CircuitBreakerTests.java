@@ -0,0 +1,92 @@
+package com.example.demo.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakerTests {
+
+	private static final WebClientResponseException UNAVAILABLE = WebClientResponseException.create(
+			HttpStatus.SERVICE_UNAVAILABLE.value(), "Service Unavailable", null, null, null);
+
+	// Stands in for System.nanoTime, so time passes only when a test says so
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	void opensOnFailuresFailsFastAndClosesAfterGoodTrials() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 0.5,
+				Duration.ofSeconds(5), Duration.ofMillis(100), 1, now::get);
+		breaker.bindTo(registry);
+
+		// Bad requests say nothing about the upstream
+		WebClientResponseException badRequest = WebClientResponseException.create(
+				HttpStatus.BAD_REQUEST.value(), "Bad Request", null, null, null);
+		for (int i = 0; i < 4; i++) {
+			assertThatThrownBy(() -> breaker.run(() -> Mono.error(badRequest)).block()).isSameAs(badRequest);
+		}
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+		breaker.run(() -> Mono.just("ok")).block();
+		breaker.run(() -> Mono.just("ok")).block();
+		assertThatThrownBy(() -> breaker.run(() -> Mono.error(UNAVAILABLE)).block()).isSameAs(UNAVAILABLE);
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+		assertThatThrownBy(() -> breaker.run(() -> Mono.error(UNAVAILABLE)).block()).isSameAs(UNAVAILABLE);
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+		AtomicInteger calls = new AtomicInteger();
+		assertThatThrownBy(() -> breaker.run(() -> Mono.fromCallable(calls::incrementAndGet)).block())
+				.isInstanceOf(CircuitOpenException.class);
+		assertThat(calls).hasValue(0);
+		assertThat(registry.get("gemini.circuit.rejected").functionCounter().count()).isEqualTo(1);
+		assertThat(registry.get("gemini.circuit.state").gauge().value()).isEqualTo(1);
+
+		advance(Duration.ofMillis(99));
+		assertThatThrownBy(() -> breaker.run(() -> Mono.just("too early")).block())
+				.isInstanceOfSatisfying(CircuitOpenException.class,
+						e -> assertThat(e.getRetryAfter()).isEqualTo(Duration.ofMillis(1)));
+		advance(Duration.ofMillis(1));
+		assertThat(breaker.run(() -> Mono.just("trial")).block()).isEqualTo("trial");
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+
+	@Test
+	void failedTrialReopensAndSlowCallsCountAsFailures() {
+		CircuitBreaker breaker = new CircuitBreaker("test", 2, 2, 1.0,
+				Duration.ofMillis(20), Duration.ofMillis(100), 1, now::get);
+
+		breaker.run(() -> Mono.fromSupplier(() -> {
+			advance(Duration.ofMillis(20));
+			return "just in time";
+		})).block();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+		breaker.run(() -> Mono.fromSupplier(() -> {
+			advance(Duration.ofMillis(21));
+			return "slow";
+		})).block();
+		breaker.run(() -> Mono.fromSupplier(() -> {
+			advance(Duration.ofMillis(21));
+			return "slow";
+		})).block();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+		advance(Duration.ofMillis(100));
+		assertThatThrownBy(() -> breaker.run(() -> Mono.error(UNAVAILABLE)).block()).isSameAs(UNAVAILABLE);
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+		assertThatThrownBy(() -> breaker.run(() -> Mono.just("refused")).block())
+				.isInstanceOf(CircuitOpenException.class);
+	}
+
+	private void advance(Duration duration) {
+		now.addAndGet(duration.toNanos());
+	}
+}
@@ -0,0 +1,41 @@
+package com.example.demo.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IngredientCanonicalizerTests {
+
+	@Test
+	void stripsQuantitiesUnitsAndModifiers() {
+		assertThat(IngredientCanonicalizer.canonicalize("2 cups chopped Tomatoes (ripe)")).isEqualTo("tomato");
+		assertThat(IngredientCanonicalizer.canonicalize("1/2 tsp salt, to taste")).isEqualTo("salt");
+		assertThat(IngredientCanonicalizer.canonicalize("200g boneless skinless chicken breasts")).isEqualTo("chicken breast");
+		assertThat(IngredientCanonicalizer.canonicalize("  Olive Oil ")).isEqualTo("olive oil");
+	}
+
+	@Test
+	void singularizesTheHeadNoun() {
+		assertThat(IngredientCanonicalizer.canonicalize("berries")).isEqualTo("berry");
+		assertThat(IngredientCanonicalizer.canonicalize("potatoes")).isEqualTo("potato");
+		assertThat(IngredientCanonicalizer.canonicalize("bay leaves")).isEqualTo("bay leaf");
+		assertThat(IngredientCanonicalizer.canonicalize("cookies")).isEqualTo("cookie");
+		assertThat(IngredientCanonicalizer.canonicalize("hummus")).isEqualTo("hummus");
+		assertThat(IngredientCanonicalizer.canonicalize("molasses")).isEqualTo("molasses");
+	}
+
+	@Test
+	void keepsTheUnitWhenItIsTheIngredient() {
+		assertThat(IngredientCanonicalizer.canonicalize("3 cloves")).isEqualTo("clove");
+		assertThat(IngredientCanonicalizer.canonicalize("2")).isEmpty();
+		assertThat(IngredientCanonicalizer.canonicalize(null)).isEmpty();
+	}
+
+	@Test
+	void detectsModifiersAnywhereInTheText() {
+		assertThat(IngredientCanonicalizer.hasModifier("Frozen")).isTrue();
+		assertThat(IngredientCanonicalizer.hasModifier("milk, whole")).isTrue();
+		assertThat(IngredientCanonicalizer.hasModifier("chicken breast")).isFalse();
+		assertThat(IngredientCanonicalizer.hasModifier(null)).isFalse();
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.demo.search;
+
+import com.example.demo.model.Ingredient;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IngredientDictionaryTests {
+
+	@Test
+	void matchesMisspellingsWithinLengthScaledDistance() {
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		when(mongoTemplate.stream(any(Query.class), eq(Ingredient.class))).thenReturn(Stream.of(
+				ingredient("1", "Tomatoes", "tomato"),
+				ingredient("2", "Chicken Breast", "chicken breast"),
+				ingredient("3", "Rice", "rice"),
+				// Not backfilled yet: normalized on load
+				ingredient("4", "Yellow Onions", null)));
+		IngredientDictionary dictionary = new IngredientDictionary(mongoTemplate, 2);
+
+		assertThat(dictionary.find("tomato").getId()).isEqualTo("1");
+		assertThat(dictionary.find("tomaot").getId()).isEqualTo("1");
+		assertThat(dictionary.find("chiken braest").getId()).isEqualTo("2");
+		assertThat(dictionary.find("yelow onion").getId()).isEqualTo("4");
+		// Too short for any edit
+		assertThat(dictionary.find("ice")).isNull();
+		assertThat(dictionary.find("potato")).isNull();
+
+		dictionary.put(ingredient("5", "Potatoes", "potato"));
+		assertThat(dictionary.find("potatoe").getId()).isEqualTo("5");
+		dictionary.remove("1");
+		assertThat(dictionary.find("tomato")).isNull();
+		assertThat(dictionary.find("potato").getId()).isEqualTo("5");
+	}
+
+	@Test
+	void keepsWritesMadeWhileARebuildReadsMongo() {
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		IngredientDictionary dictionary = new IngredientDictionary(mongoTemplate, 2);
+		when(mongoTemplate.stream(any(Query.class), eq(Ingredient.class)))
+				.thenReturn(Stream.of(ingredient("1", "Tomatoes", "tomato")))
+				.thenAnswer(invocation -> {
+					// Written after the rebuild's read had passed them
+					dictionary.put(ingredient("2", "Potatoes", "potato"));
+					dictionary.remove("1");
+					return Stream.of(ingredient("1", "Tomatoes", "tomato"));
+				});
+		dictionary.ensureLoaded();
+
+		dictionary.rebuild();
+		assertThat(dictionary.find("potato").getId()).isEqualTo("2");
+		assertThat(dictionary.find("tomato")).isNull();
+	}
+
+	@Test
+	void damerauLevenshteinCountsTranspositionsAsOneEdit() {
+		assertThat(BkTree.distance("tomato", "tomato")).isZero();
+		assertThat(BkTree.distance("tomaot", "tomato")).isEqualTo(1);
+		assertThat(BkTree.distance("ca", "abc")).isEqualTo(2);
+		assertThat(BkTree.distance("", "egg")).isEqualTo(3);
+		assertThat(BkTree.distance("kitten", "sitting")).isEqualTo(3);
+	}
+
+	private static Ingredient ingredient(String id, String name, String normalizedName) {
+		Ingredient ingredient = new Ingredient();
+		ingredient.setId(id);
+		ingredient.setName(name);
+		ingredient.setNormalizedName(normalizedName);
+		return ingredient;
+	}
+}
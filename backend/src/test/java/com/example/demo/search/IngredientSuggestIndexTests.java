@@ -0,0 +1,99 @@
+package com.example.demo.search;
+
+import com.example.demo.model.Ingredient;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IngredientSuggestIndexTests {
+
+	@Test
+	void suggestsByWordPrefixRankedByFrequency() {
+		RecipeSearchIndex recipes = mock(RecipeSearchIndex.class);
+		when(recipes.ingredientFrequencies()).thenReturn(Map.of(
+				"tomato", 40,
+				"cherry tomato", 12,
+				"tomato paste", 25,
+				"tofu", 3,
+				"chicken breast", 30));
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		when(mongoTemplate.stream(any(Query.class), eq(Ingredient.class))).thenReturn(Stream.of(ingredient("Tofu"), ingredient("tomatillos")));
+		IngredientSuggestIndex index = new IngredientSuggestIndex(mongoTemplate, recipes);
+
+		assertThat(index.suggest("TOM", 3)).containsExactly("tomato", "tomato paste", "cherry tomato");
+		assertThat(index.suggest("to", 10)).containsExactly("tomato", "tomato paste", "cherry tomato", "tofu", "tomatillo");
+		assertThat(index.suggest("bre", 10)).containsExactly("chicken breast");
+		assertThat(index.suggest("  ", 10)).isEmpty();
+
+		index.addAll(List.of("2 tomatillos", "tomatillo"));
+		assertThat(index.suggest("tomati", 10)).containsExactly("tomatillo");
+		assertThat(index.suggest("to", 5)).containsExactly("tomato", "tomato paste", "cherry tomato", "tofu", "tomatillo");
+	}
+
+	@Test
+	void mergesNewNamesIntoTheSortedKeys() {
+		RecipeSearchIndex recipes = mock(RecipeSearchIndex.class);
+		when(recipes.ingredientFrequencies()).thenReturn(Map.of("tomato", 40, "cherry tomato", 12, "zucchini", 5));
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		when(mongoTemplate.stream(any(Query.class), eq(Ingredient.class))).thenReturn(Stream.of());
+		IngredientSuggestIndex index = new IngredientSuggestIndex(mongoTemplate, recipes);
+		index.ensureLoaded();
+
+		index.addAll(List.of("green tomatoes", "apple", "Zucchini"));
+		assertThat(index.suggest("tom", 10)).containsExactly("tomato", "cherry tomato", "green tomato");
+		assertThat(index.suggest("gre", 10)).containsExactly("green tomato");
+		assertThat(index.suggest("a", 10)).containsExactly("apple");
+		assertThat(index.suggest("z", 10)).containsExactly("zucchini");
+		assertThat(index.suggest("cherry", 10)).containsExactly("cherry tomato");
+	}
+
+	@Test
+	void dropsNamesNothingUsesAnyMore() {
+		RecipeSearchIndex recipes = mock(RecipeSearchIndex.class);
+		when(recipes.ingredientFrequencies()).thenReturn(Map.of("tomato", 40, "cherry tomato", 12));
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		when(mongoTemplate.stream(any(Query.class), eq(Ingredient.class))).thenReturn(Stream.of(ingredient("okra")));
+		IngredientSuggestIndex index = new IngredientSuggestIndex(mongoTemplate, recipes);
+		index.ensureLoaded();
+
+		// Renamed from "okra" to "green okra"; "tomato" is still used by recipes
+		index.removeAll(List.of("Okra", "tomatoes"));
+		index.addAll(List.of("green okra"));
+		assertThat(index.suggest("okr", 10)).containsExactly("green okra");
+		assertThat(index.suggest("tom", 10)).containsExactly("tomato", "cherry tomato");
+	}
+
+	@Test
+	void keepsNamesMergedWhileARebuildReadsMongo() {
+		RecipeSearchIndex recipes = mock(RecipeSearchIndex.class);
+		when(recipes.ingredientFrequencies()).thenReturn(Map.of("tomato", 40));
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		IngredientSuggestIndex index = new IngredientSuggestIndex(mongoTemplate, recipes);
+		when(mongoTemplate.stream(any(Query.class), eq(Ingredient.class))).thenReturn(Stream.of()).thenAnswer(invocation -> {
+			// Created after the rebuild's read had passed it
+			index.addAll(List.of("okra"));
+			return Stream.of();
+		});
+		index.ensureLoaded();
+
+		index.rebuild();
+		assertThat(index.suggest("ok", 10)).containsExactly("okra");
+		assertThat(index.suggest("tom", 10)).containsExactly("tomato");
+	}
+
+	private static Ingredient ingredient(String name) {
+		Ingredient ingredient = new Ingredient();
+		ingredient.setName(name);
+		return ingredient;
+	}
+}
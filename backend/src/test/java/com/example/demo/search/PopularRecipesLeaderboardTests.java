@@ -0,0 +1,141 @@
+package com.example.demo.search;
+
+import com.example.demo.model.PopularRecipe;
+import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipePage;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class PopularRecipesLeaderboardTests {
+
+	private static final double MEAN = 4.0;
+	private static final double PRIOR_REVIEWS = 20;
+
+	private MongoTemplate mongoTemplate;
+	private BulkOperations bulk;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate = mock(MongoTemplate.class);
+		bulk = mock(BulkOperations.class);
+		when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(PopularRecipe.class))).thenReturn(bulk);
+		when(mongoTemplate.aggregate(any(Aggregation.class), eq("recipes"), eq(Document.class)))
+				.thenReturn(new AggregationResults<>(List.of(new Document("mean", MEAN)), new Document()));
+	}
+
+	@Test
+	void ranksByBayesianAverage() {
+		// One 5-star review barely moves a recipe off the mean; two hundred 4.8s put it on top
+		PopularRecipesLeaderboard board = refreshed(10,
+				recipe("a", 5.0, 1), recipe("d", 4.5, 20), recipe("c", 4.5, 20), recipe("b", 4.8, 200));
+
+		assertThat(ids(board.page(10, null))).containsExactly("b", "c", "d", "a");
+		assertThat(ScoreCursor.decode(board.page(1, null).getNextCursor()))
+				.isEqualTo(new ScoreCursor((200 * 4.8 + PRIOR_REVIEWS * MEAN) / (200 + PRIOR_REVIEWS), "b"));
+		verify(bulk).execute();
+	}
+
+	@Test
+	void pagesThroughTiesByIdWithTheCursor() {
+		PopularRecipesLeaderboard board = refreshed(10,
+				recipe("a", 5.0, 1), recipe("d", 4.5, 20), recipe("c", 4.5, 20), recipe("b", 4.8, 200));
+
+		RecipePage first = board.page(2, null);
+		RecipePage second = board.page(2, ScoreCursor.decode(first.getNextCursor()));
+
+		assertThat(ids(first)).containsExactly("b", "c");
+		assertThat(ScoreCursor.decode(first.getNextCursor())).isEqualTo(new ScoreCursor(4.25, "c"));
+		assertThat(ids(second)).containsExactly("d", "a");
+		assertThat(second.getNextCursor()).isNull();
+		// A cursor whose recipe has since left the board still lands between its neighbours
+		assertThat(ids(board.page(2, new ScoreCursor(4.5, "zzz")))).containsExactly("c", "d");
+	}
+
+	@Test
+	void updateReRanksEvictsAndPersistsOnlyChangedScores() {
+		PopularRecipesLeaderboard board = refreshed(3, recipe("a", 5.0, 1), recipe("c", 4.5, 20), recipe("b", 4.8, 200));
+		clearInvocations(mongoTemplate);
+
+		board.update(recipe("e", 4.9, 100));
+
+		assertThat(ids(board.page(10, null))).containsExactly("e", "b", "c");
+		verify(mongoTemplate).save(new PopularRecipe("e", (100 * 4.9 + PRIOR_REVIEWS * MEAN) / (100 + PRIOR_REVIEWS), MEAN));
+		assertThat(removedIds()).containsExactly("a");
+
+		// A new title with the same rating swaps the recipe in without a write
+		clearInvocations(mongoTemplate);
+		Recipe renamed = recipe("c", 4.5, 20);
+		renamed.setTitle("Renamed");
+		board.update(renamed);
+		assertThat(board.page(10, null).getRecipes().get(2).getTitle()).isEqualTo("Renamed");
+		verifyNoInteractions(mongoTemplate);
+
+		// Losing the rating drops it from the board
+		board.update(recipe("b", null, 200));
+		assertThat(ids(board.page(10, null))).containsExactly("e", "c");
+		assertThat(removedIds()).containsExactly("b");
+	}
+
+	@Test
+	void servesThePersistedBoardBeforeTheFirstRebuild() {
+		when(mongoTemplate.findAll(PopularRecipe.class)).thenReturn(List.of(
+				new PopularRecipe("a", 4.9, MEAN), new PopularRecipe("b", 4.1, MEAN),
+				new PopularRecipe("deleted", 4.0, MEAN), new PopularRecipe("unrated", 3.9, MEAN)));
+		when(mongoTemplate.find(any(Query.class), eq(Recipe.class))).thenReturn(List.of(
+				recipe("a", 5.0, 1), recipe("b", 4.8, 200), recipe("unrated", null, 0)));
+		PopularRecipesLeaderboard board = new PopularRecipesLeaderboard(mongoTemplate, 10, PRIOR_REVIEWS);
+
+		board.loadMaterialized();
+
+		// Re-scored from the recipes, not the stored scores
+		assertThat(ids(board.page(10, null))).containsExactly("b", "a");
+		verify(mongoTemplate, never()).aggregate(any(Aggregation.class), anyString(), any());
+	}
+
+	private PopularRecipesLeaderboard refreshed(int size, Recipe... recipes) {
+		when(mongoTemplate.aggregate(any(Aggregation.class), eq("recipes"), eq(Recipe.class)))
+				.thenReturn(new AggregationResults<>(List.of(recipes), new Document()));
+		PopularRecipesLeaderboard board = new PopularRecipesLeaderboard(mongoTemplate, size, PRIOR_REVIEWS);
+		board.refresh();
+		return board;
+	}
+
+	private List<Object> removedIds() {
+		ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+		verify(mongoTemplate, atLeast(0)).remove(removed.capture(), eq(PopularRecipe.class));
+		return removed.getAllValues().stream().map(query -> query.getQueryObject().get("_id")).toList();
+	}
+
+	private static Recipe recipe(String id, Double rating, int reviews) {
+		Recipe recipe = new Recipe();
+		recipe.setId(id);
+		recipe.setRating(rating);
+		recipe.setReviewCount(reviews);
+		return recipe;
+	}
+
+	private static List<String> ids(RecipePage page) {
+		return page.getRecipes().stream().map(Recipe::getId).toList();
+	}
+}
@@ -0,0 +1,215 @@
+package com.example.demo.search;
+
+import com.example.demo.model.CanonicalIngredient;
+import com.example.demo.model.NutritionInfo;
+import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipeFilterRequest;
+import com.example.demo.model.RecipeTombstone;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RecipeSearchIndexTests {
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(2);
+	private static final Duration RETENTION = Duration.ofDays(30);
+
+	private RecipeSearchIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = indexOf(
+				recipe("1", "2 Tomatoes", "salt"),
+				recipe("2", "tomato paste", "Cherry Tomatoes", "basil"),
+				recipe("3", "chicken breast", "rice")
+		);
+	}
+
+	@Test
+	void ranksBySubstringMatchCount() {
+		assertThat(search(List.of("Tomat"))).containsExactly("2", "1");
+		assertThat(search(List.of("rice", "salt"))).containsExactly("1", "3");
+		assertThat(search(List.of("beef"))).isEmpty();
+	}
+
+	@Test
+	void countsAnIngredientOnceWhenSeveralQueriesMatchIt() {
+		assertThat(search(List.of("chicken", "breast", "basil"))).containsExactly("2", "3");
+	}
+
+	@Test
+	void matchesOnCanonicalIngredients() {
+		RecipeSearchIndex canonical = indexOf(
+				recipe("1", "3 large Eggs, beaten", "1 cup Chopped Onions"),
+				recipe("2", "1 egg"),
+				recipe("3", "green onion")
+		);
+
+		assertThat(canonical.search(List.of("EGGS"), 10, null).ids()).containsExactly("1", "2");
+		assertThat(canonical.search(List.of("onions"), 10, null).ids()).containsExactly("1", "3");
+	}
+
+	@Test
+	void matchesModifierQueriesAgainstTheLinesAsWritten() {
+		RecipeSearchIndex lines = indexOf(
+				recipe("1", "1 cup frozen peas", "1 cup whole milk"),
+				recipe("2", "2 cups fresh peas", "skim milk"),
+				recipe("3", "4 boneless chicken thighs"),
+				recipe("4", "chicken breast")
+		);
+
+		assertThat(lines.search(List.of("Frozen"), 10, null).ids()).containsExactly("1");
+		assertThat(lines.search(List.of("whole milk"), 10, null).ids()).containsExactly("1");
+		assertThat(lines.search(List.of("milk"), 10, null).ids()).containsExactly("1", "2");
+		assertThat(lines.search(List.of("boneless"), 10, null).ids()).containsExactly("3");
+		// Canonical and line queries can be mixed; peas matched both ways count once
+		assertThat(lines.search(List.of("frozen", "peas", "whole milk"), 10, null).ids()).containsExactly("1", "2");
+		// No canonical name contains "cup", so the lines are searched for it
+		assertThat(lines.search(List.of("cups"), 10, null).ids()).containsExactly("1", "2");
+	}
+
+	@Test
+	void pagesWithCursor() {
+		SearchPage first = index.search(List.of("a"), 2, null);
+		assertThat(first.ids()).containsExactly("2", "1");
+		assertThat(first.nextCursor()).isNotNull();
+
+		SearchPage second = index.search(List.of("a"), 2, SearchCursor.decode(first.nextCursor()));
+		assertThat(second.ids()).containsExactly("3");
+		assertThat(second.nextCursor()).isNull();
+	}
+
+	@Test
+	void followsWrites() {
+		index.ensureLoaded();
+		index.index(recipe("4", "tomato", "tomato sauce", "canned tomatoes"));
+		index.remove("2");
+		index.index(recipe("3", "sun-dried tomatoes"));
+
+		assertThat(search(List.of("tomato"))).containsExactly("4", "1", "3");
+		assertThat(search(List.of("chicken"))).isEmpty();
+	}
+
+	@Test
+	void filtersOnColumnsAndTags() {
+		RecipeSearchIndex filterIndex = indexOf(
+				recipe("a", 300.0, 20, "vegan"),
+				recipe("b", 650.0, 10, "vegan"),
+				recipe("c", null, 45, "vegan"),
+				recipe("d", 200.0, 5)
+		);
+
+		RecipeFilterRequest filters = new RecipeFilterRequest();
+		filters.setMaxCalories(500.0);
+		filters.setDietType("Vegan");
+		assertThat(filterIndex.filter(filters, 10)).containsExactly("a", "c");
+
+		filters.setDietType(null);
+		filters.setMaxPrepTime(30);
+		filters.setSortBy("calories");
+		filters.setDescending(true);
+		assertThat(filterIndex.filter(filters, 2)).containsExactly("a", "d");
+	}
+
+	@Test
+	void parallelModeMatchesSequentialMode() {
+		Recipe[] recipes = new Recipe[20000];
+		for (int i = 0; i < recipes.length; i++) {
+			recipes[i] = recipe(String.format("%05d", i), i % 3 == 0 ? "tomato" : "onion", i % 7 == 0 ? "tomato paste" : "salt");
+		}
+		RecipeSearchIndex sequential = indexOf(recipes);
+		RecipeSearchIndex parallel = indexOf(1, recipes);
+
+		SearchPage expected = sequential.search(List.of("tomato"), 25, null);
+		assertThat(parallel.search(List.of("tomato"), 25, null)).isEqualTo(expected);
+		assertThat(parallel.search(List.of("tomato"), 25, SearchCursor.decode(expected.nextCursor())))
+				.isEqualTo(sequential.search(List.of("tomato"), 25, SearchCursor.decode(expected.nextCursor())));
+	}
+
+	@Test
+	void restoresFromSnapshotAndCatchesUp(@TempDir Path dir) {
+		String snapshot = dir.resolve("index.snapshot").toString();
+		CanonicalIngredientRegistry registry = registry();
+		MongoTemplate source = mock(MongoTemplate.class);
+		when(source.stream(any(Query.class), eq(Recipe.class))).thenReturn(Stream.of(
+				recipe("1", "2 Tomatoes", "salt"),
+				recipe("2", "tomato paste", "basil"),
+				recipe("3", "1 cup frozen rice")));
+		RecipeSearchIndex original = new RecipeSearchIndex(source, registry, POOL, Integer.MAX_VALUE, snapshot, RETENTION);
+		original.ensureLoaded();
+		original.saveSnapshot();
+
+		// Since the snapshot: recipe 2 was deleted and recipe 4 was added
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		when(mongoTemplate.stream(any(Query.class), eq(Recipe.class))).thenReturn(
+				Stream.of(recipe("4")),
+				Stream.of(recipe("4", "cherry tomatoes")));
+		when(mongoTemplate.stream(any(Query.class), eq(RecipeTombstone.class))).thenReturn(
+				Stream.of(new RecipeTombstone("2", LocalDateTime.now())));
+		RecipeSearchIndex restored = new RecipeSearchIndex(mongoTemplate, registry, POOL, Integer.MAX_VALUE, snapshot, RETENTION);
+
+		assertThat(restored.search(List.of("tomato"), 10, null).ids()).containsExactly("1", "4");
+		assertThat(restored.search(List.of("rice"), 10, null).ids()).containsExactly("3");
+		assertThat(restored.search(List.of("frozen"), 10, null).ids()).containsExactly("3");
+		assertThat(restored.size()).isEqualTo(3);
+	}
+
+	private List<String> search(List<String> queries) {
+		return index.search(queries, 10, null).ids();
+	}
+
+	private static RecipeSearchIndex indexOf(Recipe... recipes) {
+		return indexOf(Integer.MAX_VALUE, recipes);
+	}
+
+	private static RecipeSearchIndex indexOf(int parallelThreshold, Recipe... recipes) {
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		when(mongoTemplate.stream(any(Query.class), eq(Recipe.class))).thenReturn(Stream.of(recipes));
+		return new RecipeSearchIndex(mongoTemplate, registry(), POOL, parallelThreshold, "", RETENTION);
+	}
+
+	// Registry backed by an in-memory counter: nothing is interned yet, every insert succeeds
+	private static CanonicalIngredientRegistry registry() {
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		AtomicInteger seq = new AtomicInteger();
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Document.class), eq("counters")))
+				.thenAnswer(invocation -> new Document("seq", seq.incrementAndGet()));
+		when(mongoTemplate.insert(any(CanonicalIngredient.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		return new CanonicalIngredientRegistry(mongoTemplate);
+	}
+
+	private static Recipe recipe(String id, String... ingredients) {
+		Recipe recipe = new Recipe();
+		recipe.setId(id);
+		recipe.setIngredients(List.of(ingredients));
+		return recipe;
+	}
+
+	private static Recipe recipe(String id, Double calories, int prepTime, String... tags) {
+		Recipe recipe = new Recipe();
+		recipe.setId(id);
+		recipe.setNutrition(new NutritionInfo(calories, null, null, null, null, null, null));
+		recipe.setPrepTimeMinutes(prepTime);
+		recipe.setTags(List.of(tags));
+		return recipe;
+	}
+}
@@ -0,0 +1,50 @@
+package com.example.demo.search;
+
+import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipePage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchResultCacheTests {
+
+	private final SearchResultCache cache = new SearchResultCache(100, new SimpleMeterRegistry());
+
+	@Test
+	void keyIgnoresOrderCaseAndDuplicates() {
+		String key = cache.searchKey(List.of("Tomatoes", "egg"), 10, null);
+
+		assertThat(cache.searchKey(List.of("EGGS", " tomato", "Egg"), 10, null)).isEqualTo(key);
+		assertThat(cache.searchKey(Arrays.asList("egg", null, "tomato", ""), 10, null)).isEqualTo(key);
+		assertThat(cache.searchKey(List.of("egg"), 10, null)).isNotEqualTo(key);
+		// A modifier narrows the query, so it is not folded into the plain ingredient
+		assertThat(cache.searchKey(List.of("whole milk"), 10, null)).isNotEqualTo(cache.searchKey(List.of("milk"), 10, null));
+	}
+
+	@Test
+	void keyKeepsLimitAndCursorApart() {
+		String key = cache.searchKey(List.of("egg"), 10, null);
+
+		assertThat(cache.searchKey(List.of("egg"), 20, null)).isNotEqualTo(key);
+		assertThat(cache.searchKey(List.of("egg"), 10, "abc")).isNotEqualTo(key);
+		assertThat(cache.searchKey(List.of("egg"), 10, "")).isEqualTo(key);
+	}
+
+	@Test
+	void invalidationMakesEarlierEntriesUnreachable() {
+		String key = cache.searchKey(List.of("egg"), 10, null);
+		RecipePage page = new RecipePage(List.of(new Recipe()), null);
+		cache.put(key, page);
+		assertThat(cache.get(key)).isSameAs(page);
+
+		cache.invalidate();
+
+		String fresh = cache.searchKey(List.of("egg"), 10, null);
+		assertThat(fresh).isNotEqualTo(key);
+		assertThat(cache.get(fresh)).isNull();
+	}
+}
@@ -0,0 +1,25 @@
+package com.example.demo.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrigramIndexTests {
+
+	@Test
+	void removeDropsPostingsAndTheDocIdCanBeReused() {
+		TrigramIndex index = new TrigramIndex();
+		int tomato = index.add("tomato");
+		int potato = index.add("potato");
+
+		index.remove(tomato);
+		assertThat(index.search("tom").toArray()).isEmpty();
+		assertThat(index.search("ato").toArray()).containsExactly(potato);
+
+		index.put(tomato, "cherry tomato");
+		assertThat(index.size()).isEqualTo(2);
+		assertThat(index.search("tom").toArray()).containsExactly(tomato);
+		assertThat(index.search("ato").toArray()).containsExactly(tomato, potato);
+		assertThat(index.search("to").toArray()).containsExactly(tomato, potato);
+	}
+}
@@ -0,0 +1,69 @@
+package com.example.demo.service;
+
+import com.example.demo.image.ReceiptImage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiServiceTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	// Sizes of 0, 1 and 2 mod 3, each spanning several 16KB body chunks
+	@ParameterizedTest
+	@ValueSource(ints = {50_001, 50_002, 50_003})
+	void inlineImageBodyIsValidJsonOfTheDeclaredLength(int size) throws Exception {
+		byte[] image = new byte[size];
+		new Random(size).nextBytes(image);
+		byte[] head = "{\"contents\":[{\"parts\":[{\"text\":\"read this\"},{\"inline_data\":{\"mimeType\":\"image/jpeg\",\"data\":\""
+				.getBytes(StandardCharsets.UTF_8);
+		byte[] tail = "\"}}]}]}".getBytes(StandardCharsets.UTF_8);
+		ReceiptImage receipt = new ReceiptImage(new ByteArrayResource(image), size, "image/jpeg", null);
+
+		byte[] body = collect(head, receipt, tail);
+
+		assertThat((long) body.length).isEqualTo(GeminiService.inlineImageContentLength(head, receipt, tail));
+		JsonNode part = MAPPER.readTree(body).at("/contents/0/parts/1/inline_data");
+		assertThat(part.get("mimeType").asText()).isEqualTo("image/jpeg");
+		assertThat(Base64.getDecoder().decode(part.get("data").asText())).isEqualTo(image);
+	}
+
+	@Test
+	void emptyImageStillMakesValidJson() throws Exception {
+		byte[] head = "{\"data\":\"".getBytes(StandardCharsets.UTF_8);
+		byte[] tail = "\"}".getBytes(StandardCharsets.UTF_8);
+		ReceiptImage receipt = new ReceiptImage(new ByteArrayResource(new byte[0]), 0, "image/jpeg", null);
+
+		byte[] body = collect(head, receipt, tail);
+
+		assertThat((long) body.length).isEqualTo(GeminiService.inlineImageContentLength(head, receipt, tail));
+		assertThat(MAPPER.readTree(body).get("data").asText()).isEmpty();
+	}
+
+	private static byte[] collect(byte[] head, ReceiptImage image, byte[] tail) {
+		ExecutorService bodyWriter = Executors.newSingleThreadExecutor();
+		try {
+			DataBuffer joined = DataBufferUtils.join(Flux.from(GeminiService.inlineImageBody(head, image, tail, bodyWriter))).block();
+			byte[] bytes = new byte[joined.readableByteCount()];
+			joined.read(bytes);
+			DataBufferUtils.release(joined);
+			return bytes;
+		} finally {
+			bodyWriter.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Ingredient;
+import com.example.demo.repository.IngredientRepository;
+import com.example.demo.search.IngredientDictionary;
+import com.example.demo.search.IngredientSearchIndex;
+import com.example.demo.search.IngredientSuggestIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngredientServiceTests {
+
+	private static final MockMultipartFile IMAGE = new MockMultipartFile("image", new byte[] {1});
+
+	private IngredientRepository ingredientRepository;
+	private IngredientSearchIndex ingredientSearchIndex;
+	private IngredientSuggestIndex ingredientSuggestIndex;
+	private IngredientDictionary ingredientDictionary;
+	private IngredientService ingredientService;
+
+	@BeforeEach
+	void setUp() {
+		ingredientRepository = mock(IngredientRepository.class);
+		ingredientSearchIndex = mock(IngredientSearchIndex.class);
+		ingredientSuggestIndex = mock(IngredientSuggestIndex.class);
+		ingredientDictionary = mock(IngredientDictionary.class);
+		GeminiService geminiService = mock(GeminiService.class);
+		when(geminiService.extractIngredientsFromImage(any())).thenReturn(Mono.just(List.of("Basil", "Tomatoes")));
+		ingredientService = new IngredientService(ingredientRepository, geminiService, ingredientSearchIndex,
+				ingredientSuggestIndex, ingredientDictionary, Schedulers.immediate());
+	}
+
+	@Test
+	void indexesTheDocumentThatWonAnInsertRaceOnAnotherNode() {
+		Ingredient basil = ingredient("b1", "Basil", "basil");
+		Ingredient tomato = ingredient("t1", "tomato", "tomato");
+		when(ingredientRepository.insertAllSkippingDuplicates(anyList())).thenReturn(List.of(basil));
+		when(ingredientRepository.findByNormalizedNameIn(Set.of("tomato"))).thenReturn(List.of(tomato));
+
+		Map<String, Object> result = ingredientService.detectIngredients(IMAGE).block();
+
+		assertThat(result.get("ingredients")).isEqualTo(List.of(basil, tomato));
+		for (Ingredient ingredient : List.of(basil, tomato)) {
+			verify(ingredientSearchIndex).index(ingredient);
+			verify(ingredientDictionary).put(ingredient);
+		}
+		verify(ingredientSuggestIndex).addAll(List.of("Basil", "tomato"));
+	}
+
+	@Test
+	void leavesAWinnerFromThisNodeToTheUploadThatCreatedIt() {
+		Ingredient basil = ingredient("b1", "Basil", "basil");
+		Ingredient tomato = ingredient("t1", "tomato", "tomato");
+		when(ingredientRepository.insertAllSkippingDuplicates(anyList())).thenReturn(List.of(basil));
+		when(ingredientRepository.findByNormalizedNameIn(Set.of("tomato"))).thenReturn(List.of(tomato));
+		// Missing when this upload looked it up, indexed by the other upload by the time it lost
+		when(ingredientDictionary.find("tomato")).thenReturn(null, tomato);
+
+		Map<String, Object> result = ingredientService.detectIngredients(IMAGE).block();
+
+		assertThat(result.get("ingredients")).isEqualTo(List.of(basil, tomato));
+		verify(ingredientSearchIndex, never()).index(tomato);
+		verify(ingredientDictionary, never()).put(tomato);
+		verify(ingredientSuggestIndex).addAll(List.of("Basil"));
+	}
+
+	private static Ingredient ingredient(String id, String name, String normalizedName) {
+		Ingredient ingredient = new Ingredient();
+		ingredient.setId(id);
+		ingredient.setName(name);
+		ingredient.setNormalizedName(normalizedName);
+		return ingredient;
+	}
+}
@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.RecentRecipesBuffer;
+import com.example.demo.model.Recipe;
+import com.example.demo.model.RecipePage;
+import com.example.demo.repository.KeysetCursor;
+import com.example.demo.repository.RecentCursor;
+import com.example.demo.repository.RecipeRepository;
+import com.example.demo.search.CanonicalIngredientRegistry;
+import com.example.demo.search.PopularRecipesLeaderboard;
+import com.example.demo.search.RecipeSearchIndex;
+import com.example.demo.search.SearchResultCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecipeServiceTests {
+
+	private RecipeRepository recipeRepository;
+	private RecentRecipesBuffer recentRecipesBuffer;
+	private RecipeService recipeService;
+
+	@BeforeEach
+	void setUp() {
+		recipeRepository = mock(RecipeRepository.class);
+		recentRecipesBuffer = mock(RecentRecipesBuffer.class);
+		recipeService = new RecipeService(recipeRepository, mock(GeminiService.class), mock(RecipeSearchIndex.class),
+				mock(SearchResultCache.class), mock(CanonicalIngredientRegistry.class), recentRecipesBuffer,
+				mock(PopularRecipesLeaderboard.class), Schedulers.immediate());
+	}
+
+	@Test
+	void firstPageFetchesOneExtraRowAndPointsAtTheLastIdReturned() {
+		when(recipeRepository.findAllByOrderByIdAsc(Limit.of(3))).thenReturn(recipes("a", "b", "c"));
+
+		RecipePage page = recipeService.getRecipesPage(2, null);
+
+		assertThat(page.getRecipes()).extracting(Recipe::getId).containsExactly("a", "b");
+		assertThat(page.getNextCursor()).isEqualTo(new KeysetCursor("b").encode());
+		verify(recipeRepository, never()).findByIdGreaterThanOrderByIdAsc(anyString(), any());
+	}
+
+	@Test
+	void nextPageSeeksPastTheCursorAndEndsWithoutOne() {
+		when(recipeRepository.findByIdGreaterThanOrderByIdAsc("b", Limit.of(3))).thenReturn(recipes("c", "d"));
+
+		RecipePage page = recipeService.getRecipesPage(2, new KeysetCursor("b").encode());
+
+		assertThat(page.getRecipes()).extracting(Recipe::getId).containsExactly("c", "d");
+		assertThat(page.getNextCursor()).isNull();
+		verify(recipeRepository, never()).findAllByOrderByIdAsc(any());
+	}
+
+	@Test
+	void pageSizeIsClampedToTheMaximum() {
+		when(recipeRepository.findAllByOrderByIdAsc(any())).thenReturn(List.of());
+
+		recipeService.getRecipesPage(10_000, null);
+
+		verify(recipeRepository).findAllByOrderByIdAsc(Limit.of(RecipeService.MAX_PAGE_SIZE + 1));
+	}
+
+	@Test
+	void recentFeedServesTheFirstPageFromTheBufferAndSeeksFromItsLastRecipe() {
+		Recipe newest = recipe("c", LocalDateTime.of(2024, 1, 1, 12, 2));
+		Recipe middle = recipe("b", LocalDateTime.of(2024, 1, 1, 12, 1));
+		Recipe oldest = recipe("a", null);
+		when(recentRecipesBuffer.newest(3)).thenReturn(List.of(newest, middle, oldest));
+		RecentCursor expected = new RecentCursor(middle.getCreatedAt(), "b");
+		when(recipeRepository.findRecent(expected, 3)).thenReturn(List.of(oldest));
+
+		RecipePage first = recipeService.getRecentRecipes(2, null);
+		RecipePage second = recipeService.getRecentRecipes(2, first.getNextCursor());
+
+		assertThat(first.getRecipes()).containsExactly(newest, middle);
+		assertThat(RecentCursor.decode(first.getNextCursor())).isEqualTo(expected);
+		assertThat(second.getRecipes()).containsExactly(oldest);
+		assertThat(second.getNextCursor()).isNull();
+		verify(recipeRepository, never()).findRecent(isNull(), anyInt());
+	}
+
+	@Test
+	void recentFeedFallsBackToMongoWhenTheBufferCannotAnswer() {
+		when(recentRecipesBuffer.newest(3)).thenReturn(null);
+		when(recipeRepository.findRecent(null, 3)).thenReturn(List.of(recipe("a", null)));
+
+		RecipePage page = recipeService.getRecentRecipes(2, null);
+
+		assertThat(page.getRecipes()).extracting(Recipe::getId).containsExactly("a");
+		assertThat(page.getNextCursor()).isNull();
+	}
+
+	@Test
+	void recentCursorKeepsMissingTimes() {
+		RecentCursor cursor = new RecentCursor(null, "a");
+
+		assertThat(RecentCursor.decode(cursor.encode())).isEqualTo(cursor);
+	}
+
+	@Test
+	void cursorRoundTripsAnyIdAndRejectsGarbage() {
+		KeysetCursor cursor = new KeysetCursor("64f0c0ffee0000000000abcd");
+
+		assertThat(KeysetCursor.decode(cursor.encode())).isEqualTo(cursor);
+		assertThat(KeysetCursor.decode(null)).isNull();
+		assertThat(KeysetCursor.decode(" ")).isNull();
+		assertThatThrownBy(() -> KeysetCursor.decode("not base64!"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("Invalid cursor");
+	}
+
+	private static List<Recipe> recipes(String... ids) {
+		return Stream.of(ids).map(id -> recipe(id, null)).toList();
+	}
+
+	private static Recipe recipe(String id, LocalDateTime createdAt) {
+		Recipe recipe = new Recipe();
+		recipe.setId(id);
+		recipe.setCreatedAt(createdAt);
+		return recipe;
+	}
+}